@@ -0,0 +1,51 @@
+package com.ieolympicstickets.backend.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Aligne les tables de séquence (ticket_seq, orders_seq, order_line_seq) sur les ids déjà en base.
+ * <p>
+ * Les tables ticket et orders étaient en IDENTITY : la séquence créée par Hibernate
+ * repart de 1 et entrerait en collision avec les lignes existantes.
+ * Une séquence restée à 1 coûte aussi une lecture de plus au premier bloc d'ids.
+ * MySQL n'a pas de séquences, Hibernate les émule par une table à une colonne next_val.
+ */
+@Component
+public class IdSequenceInitializer {
+
+    private static final Logger log = LoggerFactory.getLogger(IdSequenceInitializer.class);
+    //must match allocationSize on the entities
+    private static final int ALLOCATION_SIZE = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    //EntityManagerFactory: run after Hibernate has created the sequence tables
+    public IdSequenceInitializer(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void align() {
+        align("ticket_seq", "ticket", "ticket_id");
+        align("orders_seq", "orders", "order_id");
+        align("order_line_seq", "order_line", "order_line_id");
+    }
+
+    private void align(String sequenceTable, String table, String idColumn) {
+        try {
+            //only ever moves forward; one allocation block of margin for the pooled optimizer
+            int updated = jdbcTemplate.update(String.format(
+                    "UPDATE %s SET next_val = GREATEST(next_val, (SELECT COALESCE(MAX(%s), 0) FROM %s) + %d)",
+                    sequenceTable, idColumn, table, ALLOCATION_SIZE + 1));
+            log.debug("Sequence {} aligned on {}.{} ({} row)", sequenceTable, table, idColumn, updated);
+        } catch (DataAccessException ex) {
+            log.warn("Could not align sequence {} on {}", sequenceTable, table, ex);
+        }
+    }
+}
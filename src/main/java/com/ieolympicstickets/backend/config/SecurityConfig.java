@@ -2,6 +2,9 @@ package com.ieolympicstickets.backend.config;
 
 import com.ieolympicstickets.backend.security.JwtAuthenticationFilter;
 import com.ieolympicstickets.backend.security.JwtService;
+import com.ieolympicstickets.backend.security.RateLimitFilter;
+import com.ieolympicstickets.backend.security.RateLimitFilter.Policy;
+import io.micrometer.core.instrument.MeterRegistry;
 import com.ieolympicstickets.backend.service.UserService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
@@ -82,11 +85,47 @@ public class SecurityConfig {
         return reg;
     }
 
+    // RATE LIMIT (avant le filtre JWT)
+    @Bean
+    public RateLimitFilter rateLimitFilter(
+            JwtService jwtService,
+            MeterRegistry meterRegistry,
+            @Value("${rate-limit.max-clients:100000}") int maxClients,
+            @Value("${rate-limit.auth.rate:1}") double authRate,
+            @Value("${rate-limit.auth.burst:10}") int authBurst,
+            @Value("${rate-limit.cart.rate:10}") double cartRate,
+            @Value("${rate-limit.cart.burst:30}") int cartBurst,
+            @Value("${rate-limit.scan.rate:20}") double scanRate,
+            @Value("${rate-limit.scan.burst:40}") int scanBurst,
+            @Value("${rate-limit.default.rate:50}") double defaultRate,
+            @Value("${rate-limit.default.burst:100}") int defaultBurst,
+            @Value("${rate-limit.sessions.rate:0.2}") double sessionsRate,
+            @Value("${rate-limit.sessions.burst:20}") int sessionsBurst
+    ) {
+        return new RateLimitFilter(jwtService, meterRegistry, maxClients,
+                new Policy("auth", authRate, authBurst),
+                new Policy("cart", cartRate, cartBurst),
+                new Policy("scan", scanRate, scanBurst),
+                new Policy("default", defaultRate, defaultBurst),
+                new Policy("sessions", sessionsRate, sessionsBurst));
+    }
+
+    @Bean
+    public FilterRegistrationBean<RateLimitFilter> disableRateLimitAutoRegistration(
+            RateLimitFilter filter
+    ) {
+        FilterRegistrationBean<RateLimitFilter> reg = new FilterRegistrationBean<>(filter);
+        reg.setEnabled(false);
+        return reg;
+    }
+
     // CHAÎNE DE SÉCURITÉ
     @Bean
     public SecurityFilterChain securityFilterChain(
             HttpSecurity http,
-            JwtAuthenticationFilter jwtAuthFilter
+            JwtAuthenticationFilter jwtAuthFilter,
+            RateLimitFilter rateLimitFilter,
+            @Value("${rate-limit.enabled:true}") boolean rateLimitEnabled
     ) throws Exception {
         http
                 .cors(Customizer.withDefaults())
@@ -102,6 +141,9 @@ public class SecurityConfig {
                                 "/api/auth/login", "/api/auth/register").permitAll()
                         .requestMatchers("/api/auth/me").authenticated()
 
+                        // billets valides d'une épreuve, pour les portiques (avant la lecture publique)
+                        .requestMatchers(HttpMethod.GET, "/api/events/*/tickets/**").hasRole("EMPLOYEE")
+
                         // lecture publique des events
                         .requestMatchers(HttpMethod.GET,
                                 "/api/offers/**", "/api/events/**", "/api/events", "/api/offers").permitAll()
@@ -117,6 +159,10 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.DELETE,
                                 "/api/events/**", "/api/offers/**").hasRole("ADMIN")
 
+                        // Salle d'attente : publique, comme le panier
+                        .requestMatchers(HttpMethod.POST, "/api/waiting-room/*/join").permitAll()
+                        .requestMatchers(HttpMethod.GET,  "/api/waiting-room/*/status").permitAll()
+
                         // Création / lecture / modification de panier autorisées sans login
                         .requestMatchers(HttpMethod.POST,   "/api/cart",           "/api/cart/items").permitAll()
                         .requestMatchers(HttpMethod.GET,    "/api/cart/**").permitAll()
@@ -124,14 +170,15 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.DELETE, "/api/cart/items/**").permitAll()
 
                         //Endpoint for Employee - ticket scanning
-                        .requestMatchers(HttpMethod.POST,    "/api/tickets/scan").hasRole("EMPLOYEE")
+                        .requestMatchers(HttpMethod.POST,    "/api/tickets/scan", "/api/tickets/scan/batch").hasRole("EMPLOYEE")
+                        .requestMatchers(HttpMethod.GET,     "/api/tickets/scan/keys").hasRole("EMPLOYEE")
 
                         // validation panier → user authentifié
                         .requestMatchers(HttpMethod.POST,
                                 "/api/cart/validate").authenticated()
 
                         // Lecture de l’historique des commandes -> user authentifié
-                        .requestMatchers(HttpMethod.GET, "/api/orders", "/api/orders/*")
+                        .requestMatchers(HttpMethod.GET, "/api/orders", "/api/orders/*", "/api/orders/*/status")
                         .authenticated()
 
                         //lecture des billets -> user authentifié
@@ -166,6 +213,9 @@ public class SecurityConfig {
                 )
                 .addFilterBefore(jwtAuthFilter,
                         UsernamePasswordAuthenticationFilter.class);
+        if (rateLimitEnabled) {
+            http.addFilterBefore(rateLimitFilter, JwtAuthenticationFilter.class);
+        }
 
         return http.build();
     }
@@ -179,8 +229,8 @@ public class SecurityConfig {
         cfg.setAllowedMethods(List.of(
                 "GET","POST","PUT","PATCH","DELETE","OPTIONS"));
 
-        cfg.setAllowedHeaders(List.of("Authorization","Content-Type","X-Session-Id"));
-        cfg.setExposedHeaders(List.of("Authorization"));
+        cfg.setAllowedHeaders(List.of("Authorization","Content-Type","X-Session-Id","Idempotency-Key","X-Queue-Token","X-Admission-Token","X-Gate-Id"));
+        cfg.setExposedHeaders(List.of("Authorization","Retry-After","X-Next-Cursor"));
         cfg.setAllowCredentials(true);
 
         UrlBasedCorsConfigurationSource src =
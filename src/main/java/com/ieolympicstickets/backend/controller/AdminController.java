@@ -3,11 +3,15 @@ package com.ieolympicstickets.backend.controller;
 
 import com.ieolympicstickets.backend.model.Event;
 import com.ieolympicstickets.backend.model.Offer;
+import com.ieolympicstickets.backend.model.PaymentRefund;
 import com.ieolympicstickets.backend.model.Role;
 import com.ieolympicstickets.backend.model.User;
 import com.ieolympicstickets.backend.service.EventService;
 import com.ieolympicstickets.backend.service.OfferService;
 import com.ieolympicstickets.backend.service.OrderService;
+import com.ieolympicstickets.backend.service.RefundService;
+import com.ieolympicstickets.backend.service.ScanLogService;
+import com.ieolympicstickets.backend.service.ScanLogService.GateThroughput;
 import com.ieolympicstickets.backend.service.UserService;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
@@ -27,22 +31,29 @@ public class AdminController {
     private final EventService eventService;
     private final OfferService offerService;
     private final OrderService orderService;
+    private final ScanLogService scanLogService;
+    private final RefundService refundService;
 
     public AdminController(UserService userService,
                                               EventService eventService,
                                               OfferService offerService,
-                                              OrderService orderService) {
+                                              OrderService orderService,
+                                              ScanLogService scanLogService,
+                                              RefundService refundService) {
                     this.userService = userService;
                     this.eventService = eventService;
                     this.offerService = offerService;
                     this.orderService = orderService;
+                    this.scanLogService = scanLogService;
+                    this.refundService = refundService;
     }
 
     //CRUD offers
 
     @GetMapping("/offers")
-    public List<Offer> listOffers() {
-        return offerService.findAllOffers();
+    public ResponseEntity<List<Offer>> listOffers(@RequestParam(required = false) String cursor,
+                                                  @RequestParam(required = false) Integer limit) {
+        return Pagination.ok(offerService.findOffersPage(Pagination.cursor(cursor), Pagination.limit(limit)));
     }
 
     @PostMapping("/offers")
@@ -71,8 +82,9 @@ public class AdminController {
     // CRUD events
 
     @GetMapping ("/events")
-    public List<Event> listEvents() {
-        return eventService.findAllEvents();
+    public ResponseEntity<List<Event>> listEvents(@RequestParam(required = false) String cursor,
+                                                  @RequestParam(required = false) Integer limit) {
+        return Pagination.ok(eventService.findEventsPage(Pagination.datedCursor(cursor), Pagination.limit(limit)));
     }
 
     @PostMapping("/events")
@@ -105,6 +117,23 @@ public class AdminController {
         return ResponseEntity.ok(count);
     }
 
+    // refunds owed on cancelled orders that the payment provider has not done yet
+    @GetMapping("/refunds")
+    public ResponseEntity<List<PaymentRefund>> listPendingRefunds() {
+        return ResponseEntity.ok(refundService.pending());
+    }
+
+    @PostMapping("/refunds/{id}/retry")
+    public ResponseEntity<PaymentRefund> retryRefund(@PathVariable Long id) {
+        return ResponseEntity.ok(refundService.retry(id));
+    }
+
+    // gates: scans per second and reject rate over the last seconds (this instance)
+    @GetMapping("/scan/gates")
+    public ResponseEntity<List<GateThroughput>> getGateThroughput() {
+        return ResponseEntity.ok(scanLogService.gates());
+    }
+
 // User operations - to expand
     /**
      * Fetch user_key
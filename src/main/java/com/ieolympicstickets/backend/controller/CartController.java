@@ -4,6 +4,7 @@ package com.ieolympicstickets.backend.controller;
 import com.ieolympicstickets.backend.model.Cart;
 import com.ieolympicstickets.backend.model.User;
 import com.ieolympicstickets.backend.service.CartService;
+import com.ieolympicstickets.backend.service.CheckoutIdempotencyService;
 import com.ieolympicstickets.backend.service.UserService;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -18,6 +19,8 @@ import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
@@ -29,10 +32,13 @@ public class CartController {
 
     private final CartService cartService;
     private final UserService userService;
+    private final CheckoutIdempotencyService checkoutIdempotencyService;
 
-    public CartController (CartService cartService, UserService userService) {
+    public CartController (CartService cartService, UserService userService,
+                           CheckoutIdempotencyService checkoutIdempotencyService) {
         this.cartService = cartService;
         this.userService = userService;
+        this.checkoutIdempotencyService = checkoutIdempotencyService;
     }
 
 
@@ -42,22 +48,30 @@ public class CartController {
                     content = @Content(mediaType = "application/json",
                             schema = @Schema(implementation = ValidateCartResponse.class))),
             @ApiResponse(responseCode = "400", description = "Erreur de validation du panier"),
-            @ApiResponse(responseCode = "401", description = "Non autorisé")
+            @ApiResponse(responseCode = "401", description = "Non autorisé"),
+            @ApiResponse(responseCode = "403", description = "Salle d'attente active, jeton d'admission manquant"),
+            @ApiResponse(responseCode = "409", description = "Requête avec la même Idempotency-Key en cours"),
+            @ApiResponse(responseCode = "422", description = "Idempotency-Key déjà utilisée pour un autre panier")
     })
     @PostMapping("/validate")
     public ResponseEntity<ValidateCartResponse> validateCart(
             @RequestBody ValidateCartRequest request,
+            @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestHeader(name = "X-Admission-Token", required = false) String admissionToken,
             Authentication authentication) {
             //use email from JWT
             String email = authentication.getName();
             //load User if needed
             User user = userService.findUserByEmail(email);
             //ask service
-            //paymentToken (mock)
-            ValidateCartResponse resp = cartService.validateCart(
-                    request.cartId(),
-                    user,
-                    request.paymentToken());
+            //paymentToken (mock) - a retry with the same Idempotency-Key replays the first response
+            ValidateCartResponse resp = checkoutIdempotencyService.validateOnce(
+                    idempotencyKey, user, request.cartId(), request.paymentToken(),
+                    () -> cartService.validateCart(
+                            request.cartId(),
+                            user,
+                            request.paymentToken(),
+                            admissionToken));
             return ResponseEntity.ok(resp);
     }
 
@@ -113,7 +127,9 @@ public class CartController {
                         item.getOffer().getOfferId(),
                         item.getQuantity(),
                         item.getOffer().getEvent().getId(),
-                        item.getOffer().getEvent().getTitle()
+                        item.getOffer().getEvent().getTitle(),
+                        item.getHoldExpiresAt(),
+                        holdSecondsRemaining(item.getHoldExpiresAt())
                 )).toList();
         //get cart
         return ResponseEntity.ok(new CartDetailsResponse(cart.getId(), items));
@@ -140,6 +156,14 @@ public class CartController {
     }
 
 
+    //seconds left on a cart hold, 0 once expired
+    static long holdSecondsRemaining(Instant holdExpiresAt) {
+        if (holdExpiresAt == null) {
+            return 0;
+        }
+        return Math.max(0, Duration.between(Instant.now(), holdExpiresAt).getSeconds());
+    }
+
     //Dto
     public static record ValidateCartRequest(
             @Schema(description = "Identifiant du panier à valider")
@@ -154,8 +178,12 @@ public class CartController {
             BigDecimal total,
             @Schema(description = "Liste des erreurs rencontrées")
             List<String> errors,
-            @Schema(description = "Liste des QR hashes générés pour les billets")
-            List<String> qrHashes
+            @Schema(description = "Liste des QR hashes générés pour les billets (vide si génération différée)")
+            List<String> qrHashes,
+            @Schema(description = "Identifiant de la commande créée")
+            Long orderId,
+            @Schema(description = "Statut de la commande (ISSUED, PENDING_ISSUANCE)")
+            String orderStatus
     ) {}
 
     public static record CartResponse(
@@ -173,7 +201,11 @@ public class CartController {
             @Schema(description = "ID de l'épreuve")
             Long eventId,
             @Schema(description = "Titre de l'épreuve")
-            String eventTitle
+            String eventTitle,
+            @Schema(description = "Fin du blocage du stock pour cet article")
+            Instant holdExpiresAt,
+            @Schema(description = "Secondes restantes avant la fin du blocage")
+            long holdSecondsRemaining
     ) {}
 
     public static record CartDetailsResponse(
@@ -9,6 +9,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -29,19 +30,21 @@ public class CartItemController {
     @PostMapping
     public ResponseEntity<CartItemDetailsResponse> addItem(
             @RequestHeader(name="X-Session-Id", required = false) String sessionId,
+            @RequestHeader(name = "X-Admission-Token", required = false) String admissionToken,
             Authentication auth,
             @RequestBody AddCartItemRequest req
     ) {
         User user = (auth != null && auth.isAuthenticated())
                 ? userService.findUserByEmail(auth.getName())
                 : null;
-        Cart cart = cartItemService.addItem(sessionId, user, req.offerId(), req.quantity());
+        Cart cart = cartItemService.addItem(sessionId, user, req.offerId(), req.quantity(), admissionToken);
         return ResponseEntity.ok(toDto(cart));
     }
 
     @PatchMapping("/{itemId}")
     public ResponseEntity<CartItemDetailsResponse> updateItem(
             @RequestHeader(name="X-Session-Id", required = false) String sessionId,
+            @RequestHeader(name = "X-Admission-Token", required = false) String admissionToken,
             Authentication auth,
             @PathVariable Long itemId,
             @RequestBody UpdateCartItemRequest req
@@ -49,7 +52,7 @@ public class CartItemController {
         User user = (auth != null && auth.isAuthenticated())
                 ? userService.findUserByEmail(auth.getName())
                 : null;
-        Cart cart = cartItemService.updateItem(sessionId, user, itemId, req.quantity());
+        Cart cart = cartItemService.updateItem(sessionId, user, itemId, req.quantity(), admissionToken);
         return ResponseEntity.ok(toDto(cart));
     }
 
@@ -77,7 +80,9 @@ public class CartItemController {
                             offer.getOfferId(),
                             i.getQuantity(),
                             event.getId(),
-                            event.getTitle()
+                            event.getTitle(),
+                            i.getHoldExpiresAt(),
+                            CartController.holdSecondsRemaining(i.getHoldExpiresAt())
                     );
                 })
                 .collect(Collectors.toList());
@@ -85,7 +90,8 @@ public class CartItemController {
     }
 
     // DTOs
-    public static record CartItemDto(Long offerId, int quantity, Long eventId, String eventTitle) {}
+    public static record CartItemDto(Long offerId, int quantity, Long eventId, String eventTitle,
+                                     Instant holdExpiresAt, long holdSecondsRemaining) {}
     public static record CartItemDetailsResponse(Long cartId, List<CartItemDto> items) {}
     public static record AddCartItemRequest(Long offerId, int quantity) {}
     public static record UpdateCartItemRequest(int quantity) {}
@@ -0,0 +1,132 @@
+package com.ieolympicstickets.backend.controller;
+
+import com.ieolympicstickets.backend.service.CatalogCache;
+import com.ieolympicstickets.backend.service.CatalogSnapshotService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Réponses GET du catalogue public avec ETag et Cache-Control.
+ * L'ETag est la version du catalogue : un If-None-Match à jour répond 304 sans calculer le corps.
+ */
+@Component
+public class CatalogResponses {
+
+    private final CatalogCache catalogCache;
+    private final CacheControl eventsCacheControl;
+    private final CacheControl offersCacheControl;
+
+    public CatalogResponses(CatalogCache catalogCache,
+                            @Value("${catalog.http.events-max-age-seconds:60}") long eventsMaxAge,
+                            @Value("${catalog.http.offers-max-age-seconds:5}") long offersMaxAge) {
+        this.catalogCache = catalogCache;
+        this.eventsCacheControl = CacheControl.maxAge(Duration.ofSeconds(eventsMaxAge)).cachePublic()
+                .staleWhileRevalidate(Duration.ofSeconds(eventsMaxAge));
+        this.offersCacheControl = CacheControl.maxAge(Duration.ofSeconds(offersMaxAge)).cachePublic();
+    }
+
+    /** Épreuves : ne changent qu'avec l'admin */
+    public <T> ResponseEntity<T> events(WebRequest request, Supplier<ResponseEntity<T>> body) {
+        return conditional(request, "e" + catalogCache.eventsVersion(), eventsCacheControl, body);
+    }
+
+    /** Offres : le stock change aussi avec les achats, max-age court */
+    public <T> ResponseEntity<T> offers(WebRequest request, Supplier<ResponseEntity<T>> body) {
+        return conditional(request, "o" + catalogCache.offersVersion(), offersCacheControl, body);
+    }
+
+    /**
+     * Snapshot pré-sérialisé : octets renvoyés tels quels, variante gzip si le client l'accepte.
+     * Chaque variante a son ETag, un cache ne peut pas servir l'une pour l'autre.
+     * Même Cache-Control que les offres, dont il contient le stock.
+     */
+    public ResponseEntity<byte[]> snapshot(WebRequest request, CatalogSnapshotService.Snapshot snapshot) {
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        String etag = gzip ? snapshot.gzipEtag() : snapshot.etag();
+        if (request.checkNotModified(etag)) {
+            if (request instanceof ServletWebRequest servletRequest && servletRequest.getResponse() != null) {
+                servletRequest.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, offersCacheControl.getHeaderValue());
+                servletRequest.getResponse().setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            return null;
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(offersCacheControl)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .contentType(MediaType.APPLICATION_JSON);
+        if (gzip) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.gzip());
+        }
+        return builder.body(snapshot.json());
+    }
+
+    /**
+     * Accept-Encoding (RFC 9110 §12.5.3) : gzip accepté s'il est cité avec q > 0,
+     * ou couvert par "*" avec q > 0 sans être cité. "gzip;q=0" est un refus.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double wildcard = null;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        //malformed weight: ignore the coding rather than guess
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = gzip == null ? q : Math.max(gzip, q);
+            } else if (coding.equals("*")) {
+                wildcard = q;
+            }
+        }
+        if (gzip != null) {
+            return gzip > 0;
+        }
+        return wildcard != null && wildcard > 0;
+    }
+
+    private static <T> ResponseEntity<T> conditional(WebRequest request, String version,
+                                                     CacheControl cacheControl, Supplier<ResponseEntity<T>> body) {
+        String etag = "\"" + version + "\"";
+        if (request.checkNotModified(etag)) {
+            //304 and ETag already written by Spring; Cache-Control repeated for the caches
+            if (request instanceof ServletWebRequest servletRequest && servletRequest.getResponse() != null) {
+                servletRequest.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+            }
+            return null;
+        }
+        ResponseEntity<T> response = body.get();
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            return response;
+        }
+        //keep the supplier's headers (X-Next-Cursor of the paginated lists)
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .body(response.getBody());
+    }
+}
@@ -2,18 +2,40 @@ package com.ieolympicstickets.backend.controller;
 
 import com.ieolympicstickets.backend.model.Event;
 import com.ieolympicstickets.backend.model.Offer;
+import com.ieolympicstickets.backend.repository.projection.EventSummary;
+import com.ieolympicstickets.backend.service.CatalogSnapshotService;
+import com.ieolympicstickets.backend.service.EventSearchService;
+import com.ieolympicstickets.backend.service.EventSearchService.SearchResult;
 import com.ieolympicstickets.backend.service.EventService;
+import com.ieolympicstickets.backend.service.FeaturedEventsService;
+import com.ieolympicstickets.backend.service.FeaturedEventsService.FeaturedEvent;
 import com.ieolympicstickets.backend.service.OfferService;
+import com.ieolympicstickets.backend.service.OfferStreamService;
+import com.ieolympicstickets.backend.service.TicketFeedService;
+import com.ieolympicstickets.backend.util.KeysetPage;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,20 +46,78 @@ import java.util.Optional;
 public class EventController {
     private final EventService eventService;
     private final OfferService offerService;
+    private final CatalogResponses catalogResponses;
+    private final CatalogSnapshotService catalogSnapshotService;
+    private final EventSearchService eventSearchService;
+    private final OfferStreamService offerStreamService;
+    private final FeaturedEventsService featuredEventsService;
+    private final TicketFeedService ticketFeedService;
 
-    public EventController(EventService eventService, OfferService offerService) {
+    public EventController(EventService eventService, OfferService offerService,
+                           CatalogResponses catalogResponses, CatalogSnapshotService catalogSnapshotService,
+                           EventSearchService eventSearchService, OfferStreamService offerStreamService,
+                           FeaturedEventsService featuredEventsService, TicketFeedService ticketFeedService) {
 
         this.eventService = eventService;
         this.offerService = offerService;
+        this.catalogResponses = catalogResponses;
+        this.catalogSnapshotService = catalogSnapshotService;
+        this.eventSearchService = eventSearchService;
+        this.offerStreamService = offerStreamService;
+        this.featuredEventsService = featuredEventsService;
+        this.ticketFeedService = ticketFeedService;
     }
 
     @GetMapping
-    @Operation(summary = "Récupère les épreuves", description = "Retourne la liste de toutes les épreuves en base")
+    @Operation(summary = "Récupère les épreuves",
+            description = "Retourne les épreuves par date (sans description), page par page : la suivante s'obtient avec le curseur de l'en-tête X-Next-Cursor")
     @ApiResponse(responseCode = "200", description = "Liste d'épreuves renvoyée",
-            content = @Content(mediaType="application/json", schema = @Schema(implementation = Event.class)))
-    public List<Event> getAllEvents() {
-        return eventService.findAllEvents();
+            content = @Content(mediaType="application/json", schema = @Schema(implementation = EventSummary.class)))
+    public ResponseEntity<List<EventSummary>> getAllEvents(
+            @Parameter(description = "Curseur renvoyé par la page précédente") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Taille de page (100 par défaut, 500 max)") @RequestParam(required = false) Integer limit,
+            WebRequest request) {
+        KeysetPage.Cursor after = Pagination.datedCursor(cursor);
+        int size = Pagination.limit(limit);
+        return catalogResponses.events(request, () -> Pagination.ok(eventService.findEventSummariesPage(after, size)));
     }
+    @GetMapping("/catalog")
+    @Operation(summary = "Catalogue complet",
+            description = "Toutes les épreuves avec leurs offres, en un seul document pré-calculé (gzip si accepté)")
+    @ApiResponse(responseCode = "200", description = "Catalogue renvoyé",
+            content = @Content(mediaType = "application/json"))
+    public ResponseEntity<byte[]> getCatalog(WebRequest request) {
+        return catalogResponses.snapshot(request, catalogSnapshotService.current());
+    }
+
+    @GetMapping("/featured")
+    @Operation(summary = "Épreuves mises en avant",
+            description = "Épreuves à venir mises en avant, classées : avec du stock d'abord, puis par date")
+    @ApiResponse(responseCode = "200", description = "Flux renvoyé")
+    public ResponseEntity<List<FeaturedEvent>> getFeaturedEvents(WebRequest request) {
+        return catalogResponses.offers(request, () -> ResponseEntity.ok(featuredEventsService.feed()));
+    }
+
+    @GetMapping("/search")
+    @Operation(summary = "Recherche d'épreuves",
+            description = "Texte libre (titre, lieu, description ; début de mot, sans accents) et filtres lieu, dates, mise en avant")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Résultats, total et facettes"),
+            @ApiResponse(responseCode = "400", description = "Date invalide")
+    })
+    public ResponseEntity<SearchResult> searchEvents(
+            @Parameter(description = "Mots recherchés") @RequestParam(required = false) String q,
+            @Parameter(description = "Lieu exact") @RequestParam(required = false) String location,
+            @Parameter(description = "À partir du (yyyy-MM-dd)") @RequestParam(required = false) String from,
+            @Parameter(description = "Jusqu'au, inclus (yyyy-MM-dd)") @RequestParam(required = false) String to,
+            @RequestParam(required = false) Boolean featured,
+            @Parameter(description = "Nombre de résultats (20 par défaut, 100 max)") @RequestParam(required = false) Integer limit) {
+        LocalDateTime start = from == null ? null : parseDate(from).atStartOfDay();
+        LocalDateTime end = to == null ? null : parseDate(to).plusDays(1).atStartOfDay();
+        int size = limit == null ? 20 : Math.max(1, Math.min(limit, 100));
+        return ResponseEntity.ok(eventSearchService.search(q, location, start, end, featured, size));
+    }
+
     //test stuff
     @GetMapping("/test")
     @Operation(summary = "Point de test de l'API", description = "Vérifie la connexion à l'API")
@@ -58,9 +138,12 @@ public class EventController {
     })
     public ResponseEntity<Event> getEventById(
             @Parameter(description = "ID de l'épreuve à récupérer", required = true)
-            @PathVariable Long id) {
-        Optional<Event> event = eventService.findEventById(id);
-        return event.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+            @PathVariable Long id,
+            WebRequest request) {
+        return catalogResponses.events(request, () -> {
+            Optional<Event> event = eventService.findEventById(id);
+            return event.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+        });
     }
 
     @GetMapping("/{id}/offers")
@@ -71,9 +154,71 @@ public class EventController {
                     schema = @Schema(implementation = Offer.class)))
     public ResponseEntity<List<Offer>> getOffersByEvent(
             @Parameter(description = "ID de l'épreuve pour lequel lister les offres", required = true)
+            @PathVariable Long id,
+            WebRequest request) {
+        return catalogResponses.offers(request, () -> ResponseEntity.ok(offerService.findOffersByEvent(id)));
+    }
+
+    @GetMapping(value = "/{id}/offers/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Flux du stock des offres d'une épreuve",
+            description = "Server-Sent Events \"stock\" : d'abord toutes les offres, puis celles dont le stock change "
+                    + "(au plus une mise à jour par offre et par tick)")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Flux ouvert"),
+            @ApiResponse(responseCode = "503", description = "Trop d'abonnés")
+    })
+    public SseEmitter streamOffers(
+            @Parameter(description = "ID de l'épreuve", required = true)
+            @PathVariable Long id,
+            HttpServletResponse response) {
+        //nginx would otherwise buffer the events and defeat the per-tick updates
+        response.setHeader("X-Accel-Buffering", "no");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        return offerStreamService.subscribe(id);
+    }
+
+    @GetMapping(value = "/{id}/tickets/snapshot", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @PreAuthorize("hasRole('EMPLOYEE')")
+    @SecurityRequirement(name = "bearerAuth")
+    @Operation(summary = "Billets valides d'une épreuve, pour les portiques",
+            description = "Empreintes 64 bits triées des billets non utilisés, codées par écarts (format IETS) ; "
+                    + "le seq de l'en-tête sert de since pour les deltas")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Instantané binaire"),
+            @ApiResponse(responseCode = "401", description = "Non autorisé, rôle EMPLOYEE requis"),
+            @ApiResponse(responseCode = "404", description = "Épreuve non trouvée")
+    })
+    public ResponseEntity<byte[]> getTicketSnapshot(
+            @Parameter(description = "ID de l'épreuve", required = true)
             @PathVariable Long id) {
-        List<Offer> offers=offerService.findOffersByEvent(id);
-        return ResponseEntity.ok(offers);
+        return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(ticketFeedService.snapshot(id));
+    }
+
+    @GetMapping(value = "/{id}/tickets/delta", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @PreAuthorize("hasRole('EMPLOYEE')")
+    @SecurityRequirement(name = "bearerAuth")
+    @Operation(summary = "Billets émis et utilisés depuis un seq",
+            description = "Delta binaire (format IETD) : billets émis puis billets utilisés, avec le seq suivant")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Delta binaire"),
+            @ApiResponse(responseCode = "400", description = "since invalide"),
+            @ApiResponse(responseCode = "401", description = "Non autorisé, rôle EMPLOYEE requis"),
+            @ApiResponse(responseCode = "404", description = "Épreuve non trouvée")
+    })
+    public ResponseEntity<byte[]> getTicketDelta(
+            @Parameter(description = "ID de l'épreuve", required = true) @PathVariable Long id,
+            @Parameter(description = "seq de l'instantané ou du delta précédent", required = true)
+            @RequestParam String since) {
+        long seq;
+        try {
+            seq = Long.parseLong(since);
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "since invalide : " + since);
+        }
+        if (seq < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "since invalide : " + since);
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(ticketFeedService.delta(id, seq));
     }
 
     //
@@ -82,4 +227,12 @@ public class EventController {
         Event saved = eventService.saveEvent(event);
         return ResponseEntity.ok(saved);
     }
+
+    private static LocalDate parseDate(String date) {
+        try {
+            return LocalDate.parse(date.trim());
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Date invalide (yyyy-MM-dd) : " + date);
+        }
+    }
 }
@@ -2,10 +2,16 @@ package com.ieolympicstickets.backend.controller;
 
 
 import com.ieolympicstickets.backend.model.Offer;
+import com.ieolympicstickets.backend.repository.projection.OfferSummary;
 import com.ieolympicstickets.backend.service.OfferService;
+import com.ieolympicstickets.backend.util.KeysetPage;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @CrossOrigin(origins = "*")
@@ -13,23 +19,38 @@ import java.util.List;
 @RequestMapping("/api/offers")
 public class OfferController {
     private final OfferService offerService;
+    private final CatalogResponses catalogResponses;
 
-    public OfferController(OfferService offerService) {
+    public OfferController(OfferService offerService, CatalogResponses catalogResponses) {
         this.offerService = offerService;
+        this.catalogResponses = catalogResponses;
     }
 
+    private static final int MAX_BATCH_IDS = 200;
+
+    /**
+     * Offres en colonnes de liste (OfferSummary). Sans ids : toutes, paginées.
+     * Avec ids=1,2,3 : ces offres-là en une requête, dans l'ordre demandé (les ids inconnus sont ignorés).
+     */
     @GetMapping
-    public List<Offer> getAllOffer() {
-        return offerService.findAllOffers();
+    public ResponseEntity<List<OfferSummary>> getAllOffer(@RequestParam(required = false) String ids,
+                                                   @RequestParam(required = false) String cursor,
+                                                   @RequestParam(required = false) Integer limit,
+                                                   WebRequest request) {
+        if (ids != null) {
+            List<Long> offerIds = parseIds(ids);
+            return catalogResponses.offers(request, () -> ResponseEntity.ok(offerService.findOffersByIds(offerIds)));
+        }
+        KeysetPage.Cursor after = Pagination.cursor(cursor);
+        int size = Pagination.limit(limit);
+        return catalogResponses.offers(request, () -> Pagination.ok(offerService.findOfferSummariesPage(after, size)));
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Offer> getOfferById(@PathVariable Long id) {
-        return offerService.findAllOffers().stream()
-                .filter(o -> o.getOfferId().equals(id))
-                .findFirst()
+    public ResponseEntity<Offer> getOfferById(@PathVariable Long id, WebRequest request) {
+        return catalogResponses.offers(request, () -> offerService.findOfferById(id)
                 .map(ResponseEntity::ok)
-                .orElseGet( () -> ResponseEntity.notFound().build());
+                .orElseGet( () -> ResponseEntity.notFound().build()));
     }
 
     @PostMapping
@@ -50,5 +71,22 @@ public class OfferController {
         return ResponseEntity.noContent().build();
     }
 
-
+    private static List<Long> parseIds(String ids) {
+        List<Long> offerIds = new ArrayList<>();
+        for (String id : ids.split(",")) {
+            if (id.isBlank()) {
+                continue;
+            }
+            try {
+                offerIds.add(Long.parseLong(id.trim()));
+            } catch (NumberFormatException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Id d'offre invalide : " + id.trim());
+            }
+        }
+        if (offerIds.size() > MAX_BATCH_IDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Au plus " + MAX_BATCH_IDS + " offres par requête");
+        }
+        return offerIds;
+    }
 }
@@ -2,8 +2,10 @@ package com.ieolympicstickets.backend.controller;
 
 import com.ieolympicstickets.backend.model.Order;
 import com.ieolympicstickets.backend.model.User;
+import com.ieolympicstickets.backend.repository.projection.OrderItemSummary;
 import com.ieolympicstickets.backend.service.OrderService;
 import com.ieolympicstickets.backend.service.UserService;
+import com.ieolympicstickets.backend.util.KeysetPage;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
@@ -16,7 +18,6 @@ import org.springframework.web.bind.annotation.*;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/orders")
@@ -31,19 +32,20 @@ public class OrderController {
         this.userService = userService;
     }
 
-    @Operation(summary = "Liste les commandes de l'utilisateur connecté")
+    @Operation(summary = "Liste les commandes de l'utilisateur connecté",
+            description = "Plus récentes d'abord ; la page suivante s'obtient avec le curseur de l'en-tête X-Next-Cursor")
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Liste des commandes retournée"),
             @ApiResponse(responseCode = "401", description = "Non autorisé")
     })
     @GetMapping
-    public ResponseEntity<List<OrderDto>> listOrders(Authentication authentication) {
+    public ResponseEntity<List<OrderDto>> listOrders(@RequestParam(required = false) String cursor,
+                                                     @RequestParam(required = false) Integer limit,
+                                                     Authentication authentication) {
         User user = userService.findUserByEmail(authentication.getName());
-        List<Order> orders = orderService.listUserOrders(user);
-        List<OrderDto> dtos = orders.stream()
-                .map(o -> new OrderDto(o.getId(), o.getTotal(), o.getCreatedAt()))
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(dtos);
+        KeysetPage<Order> orders = orderService.listUserOrders(user, Pagination.datedCursor(cursor), Pagination.limit(limit));
+        return Pagination.ok(orders.map(
+                o -> new OrderDto(o.getId(), o.getTotal(), o.getCreatedAt(), o.getStatus().name())));
     }
 
     @Operation(summary = "Détail d'une commande")
@@ -57,13 +59,7 @@ public class OrderController {
             Authentication authentication) {
         User user = userService.findUserByEmail(authentication.getName());
         Order order = orderService.getOrderByIdAndUser(orderId, user);
-        List<OrderItemDto> items = order.getTickets().stream()
-                .map(t -> new OrderItemDto(
-                        t.getOffer().getOfferId(),
-                        t.getOffer().getName(),
-                        t.getQrHash(),
-                        t.isUsed()
-                )).collect(Collectors.toList());
+        List<OrderItemSummary> items = orderService.listOrderItems(order.getId());
         OrderDetailDto dto = new OrderDetailDto(
                 order.getId(),
                 order.getTotal(),
@@ -73,23 +69,41 @@ public class OrderController {
         return ResponseEntity.ok(dto);
     }
 
+    @Operation(summary = "Statut de génération des billets d'une commande")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Statut retourné"),
+            @ApiResponse(responseCode = "404", description = "Commande non trouvée ou non autorisée")
+    })
+    @GetMapping("/{orderId}/status")
+    public ResponseEntity<OrderStatusDto> getOrderStatus(
+            @PathVariable Long orderId,
+            Authentication authentication) {
+        User user = userService.findUserByEmail(authentication.getName());
+        Order order = orderService.getOrderByIdAndUser(orderId, user);
+        return ResponseEntity.ok(new OrderStatusDto(
+                order.getId(),
+                order.getStatus().name(),
+                orderService.countIssuedTickets(order.getId())
+        ));
+    }
+
     public static record OrderDto(
             Long orderId,
             BigDecimal total,
-            LocalDateTime createdAt
+            LocalDateTime createdAt,
+            String status
     ) {}
 
-    public static record OrderItemDto(
-            Long offerId,
-            String offerName,
-            String qrHash,
-            boolean used
+    public static record OrderStatusDto(
+            Long orderId,
+            String status,
+            long ticketsIssued
     ) {}
 
     public static record OrderDetailDto(
             Long orderId,
             BigDecimal total,
             LocalDateTime createdAt,
-            List<OrderItemDto> items
+            List<OrderItemSummary> items
     ) {}
 }
@@ -0,0 +1,58 @@
+package com.ieolympicstickets.backend.controller;
+
+import com.ieolympicstickets.backend.util.KeysetPage;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+/**
+ * Paramètres cursor/limit des listes paginées. Le corps reste une liste JSON ;
+ * le curseur de la page suivante est dans l'en-tête X-Next-Cursor (absent sur la dernière page).
+ */
+final class Pagination {
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 500;
+
+    private Pagination() {
+    }
+
+    /** Curseur d'une liste triée par id seul */
+    static KeysetPage.Cursor cursor(String cursor) {
+        try {
+            return KeysetPage.Cursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /** Curseur d'une liste triée par (date, id) : un curseur sans date vient d'une autre liste */
+    static KeysetPage.Cursor datedCursor(String cursor) {
+        KeysetPage.Cursor decoded = cursor(cursor);
+        if (decoded != null && decoded.at() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Curseur de pagination invalide");
+        }
+        return decoded;
+    }
+
+    static int limit(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit doit être positif");
+        }
+        return Math.min(limit, MAX_LIMIT);
+    }
+
+    static <T> ResponseEntity<List<T>> ok(KeysetPage<T> page) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            builder.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return builder.body(page.items());
+    }
+}
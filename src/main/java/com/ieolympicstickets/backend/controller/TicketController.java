@@ -1,8 +1,13 @@
 package com.ieolympicstickets.backend.controller;
 
-import com.ieolympicstickets.backend.model.Ticket;
+import com.ieolympicstickets.backend.exceptions.TicketNotFoundException;
 import com.ieolympicstickets.backend.model.User;
+import com.ieolympicstickets.backend.repository.projection.TicketSummary;
+import com.ieolympicstickets.backend.service.ScanLogService;
+import com.ieolympicstickets.backend.service.SignedTicketService;
+import com.ieolympicstickets.backend.service.SignedTicketService.VerificationKey;
 import com.ieolympicstickets.backend.service.TicketService;
+import com.ieolympicstickets.backend.service.TicketService.ScanResult;
 import com.ieolympicstickets.backend.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -11,14 +16,15 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.time.LocalDateTime;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.regex.Pattern;
 
 @Tag(name = "Ticket", description = "Service pour la gestion et la consultation des billets")
 @RestController
@@ -26,40 +32,40 @@ import java.util.stream.Collectors;
 @SecurityRequirement(name = "bearerAuth")
 public class TicketController {
 
+    private static final int MAX_BATCH_SCANS = 500;
+    private static final Pattern GATE_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+    private static final String UNKNOWN_GATE = "unknown";
+
     private final TicketService ticketService;
     private final UserService userService;
+    private final SignedTicketService signedTicketService;
+    private final ScanLogService scanLogService;
 
-    public TicketController(TicketService ticketService, UserService userService) {
+    public TicketController(TicketService ticketService, UserService userService,
+                            SignedTicketService signedTicketService, ScanLogService scanLogService) {
         this.ticketService = ticketService;
         this.userService = userService;
+        this.signedTicketService = signedTicketService;
+        this.scanLogService = scanLogService;
     }
 
     @Operation(
             summary = "Liste des e-billets de l'utilisateur",
-            description = "Retourne tous les billets de l'utilisateur courant, classés par événement"
+            description = "Retourne les billets de l'utilisateur courant, classés par date d'événement ; "
+                    + "la page suivante s'obtient avec le curseur de l'en-tête X-Next-Cursor"
     )
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Liste des billets récupérée",
-                    content = @Content(schema = @Schema(implementation = TicketDto.class))),
+                    content = @Content(schema = @Schema(implementation = TicketSummary.class))),
             @ApiResponse(responseCode = "401", description = "Non autorisé")
     })
     @GetMapping
     @PreAuthorize("isAuthenticated()") // assure que seul un utilisateur connecté puisse accéder
-    public ResponseEntity<List<TicketDto>> listMyTickets(Authentication authentication) {
+    public ResponseEntity<List<TicketSummary>> listMyTickets(@RequestParam(required = false) String cursor,
+                                                             @RequestParam(required = false) Integer limit,
+                                                             Authentication authentication) {
         User user = userService.findUserByEmail(authentication.getName());
-        List<Ticket> tickets = ticketService.findByUser(user);
-        List<TicketDto> dtos = tickets.stream()
-                .map(t -> new TicketDto(
-                        t.getId(),
-                        t.getOffer().getEvent().getId(),
-                        t.getOffer().getEvent().getTitle(),
-                        t.getOffer().getEvent().getEventDateTime(),
-                        t.getQrHash(),
-                        t.isUsed(),
-                        t.getOrder().getId()
-                ))
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(dtos);
+        return Pagination.ok(ticketService.findByUser(user, Pagination.datedCursor(cursor), Pagination.limit(limit)));
     }
 
     @Operation(
@@ -68,33 +74,52 @@ public class TicketController {
     )
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Billet récupéré",
-                    content = @Content(schema = @Schema(implementation = TicketDto.class))),
+                    content = @Content(schema = @Schema(implementation = TicketSummary.class))),
             @ApiResponse(responseCode = "401", description = "Non autorisé"),
             @ApiResponse(responseCode = "404", description = "Billet non trouvé")
     })
     @GetMapping("/{ticketId}")
     @PreAuthorize("isAuthenticated()")
-    public ResponseEntity<TicketDto> getTicket(
+    public ResponseEntity<TicketSummary> getTicket(
             @PathVariable Long ticketId,
             Authentication auth
     ) {
         User user = userService.findUserByEmail(auth.getName());
-        Ticket t = ticketService.getByIdAndUser(ticketId, user);
-        TicketDto dto = new TicketDto(
-                t.getId(),
-                t.getOffer().getEvent().getId(),
-                t.getOffer().getEvent().getTitle(),
-                t.getOffer().getEvent().getEventDateTime(),
-                t.getQrHash(),
-                t.isUsed(),
-                t.getOrder().getId()
-        );
-        return ResponseEntity.ok(dto);
+        return ResponseEntity.ok(ticketService.getByIdAndUser(ticketId, user));
+    }
+
+    @Operation(
+            summary = "QR signé d'un e-billet",
+            description = "QR vérifiable hors ligne par les portiques (Ed25519, base45), à la place du qrHash"
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "QR signé"),
+            @ApiResponse(responseCode = "401", description = "Non autorisé")
+    })
+    @GetMapping("/{ticketId}/signed-qr")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<SignedQrResponse> getSignedQr(@PathVariable Long ticketId, Authentication auth) {
+        User user = userService.findUserByEmail(auth.getName());
+        return ResponseEntity.ok(new SignedQrResponse(ticketId, ticketService.signedQr(ticketId, user)));
+    }
+
+    @Operation(
+            summary = "Clés de vérification des QR signés",
+            description = "Clés publiques à installer sur les portiques pour valider les QR sans réseau"
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Clés publiques"),
+            @ApiResponse(responseCode = "401", description = "Non autorisé, rôle EMPLOYEE requis")
+    })
+    @GetMapping("/scan/keys")
+    @PreAuthorize("hasRole('EMPLOYEE')")
+    public ResponseEntity<List<VerificationKey>> getScanKeys() {
+        return ResponseEntity.ok(signedTicketService.publicKeys());
     }
 
     @Operation(
             summary = "Scanner un billet",
-            description = "Valide le billet correspondant au QR code scanné"
+            description = "Valide le billet correspondant au QR code scanné ; le portique s'identifie par X-Gate-Id"
     )
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Billet scanné avec succès",
@@ -107,9 +132,22 @@ public class TicketController {
     @PostMapping("/scan")
     @PreAuthorize("hasRole('EMPLOYEE')")
     public ResponseEntity<ScanResponse> scanTicket(
-            @RequestBody ScanRequest req
+            @RequestBody ScanRequest req,
+            @RequestHeader(value = "X-Gate-Id", required = false) String gateHeader,
+            Authentication authentication
     ) {
-        boolean success = ticketService.scanByHash(req.getQrHash());
+        String gateId = gateId(gateHeader);
+        String qrHash = req.getQrHash();
+        boolean success;
+        try {
+            success = ticketService.scanByHash(qrHash);
+        } catch (TicketNotFoundException e) {
+            String status = SignedTicketService.isSigned(qrHash) ? ScanResult.INVALID : ScanResult.NOT_FOUND;
+            scanLogService.record(gateId, authentication.getName(), List.of(new ScanResult(qrHash, status)));
+            throw e;
+        }
+        scanLogService.record(gateId, authentication.getName(), List.of(
+                new ScanResult(qrHash, success ? ScanResult.SCANNED : ScanResult.ALREADY_USED)));
         if (success) {
             return ResponseEntity.ok(new ScanResponse("SCANNED"));
         } else {
@@ -117,36 +155,48 @@ public class TicketController {
         }
     }
 
-    // --- DTO interne pour simplifier la réponse ---
-    public static class TicketDto {
-        @Schema(description = "ID du billet")
-        public Long ticketId;
-        @Schema(description = "ID de l'épreuve")
-        public Long eventId;
-        @Schema(description = "Titre de l'épreuve")
-        public String eventTitle;
-        @Schema(description = "Date et heure de l'épreuve")
-        public LocalDateTime eventDateTime;
-        @Schema(description = "Clé QR du billet")
-        public String qrHash;
-        @Schema(description = "Indique si le billet a été utilisé")
-        public boolean used;
-        @Schema(description = "ID de la commande associée")
-        public Long orderId;
-
-        public TicketDto(Long ticketId, Long eventId, String eventTitle,
-                         LocalDateTime eventDateTime, String qrHash,
-                         boolean used, Long orderId) {
-            this.ticketId = ticketId;
-            this.eventId = eventId;
-            this.eventTitle = eventTitle;
-            this.eventDateTime = eventDateTime;
-            this.qrHash = qrHash;
-            this.used = used;
-            this.orderId = orderId;
+    @Operation(
+            summary = "Scanner un lot de billets",
+            description = "Valide en une requête les QR tamponnés par un portique, ou rejoue les QR signés "
+                    + "acceptés hors ligne ; un résultat par QR, dans l'ordre reçu"
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Résultats : SCANNED, ALREADY_USED, NOT_FOUND ou INVALID"),
+            @ApiResponse(responseCode = "400", description = "Lot vide ou trop grand"),
+            @ApiResponse(responseCode = "401", description = "Non autorisé, rôle EMPLOYEE requis")
+    })
+    @PostMapping("/scan/batch")
+    @PreAuthorize("hasRole('EMPLOYEE')")
+    public ResponseEntity<BatchScanResponse> scanBatch(@RequestBody BatchScanRequest req,
+                                                       @RequestHeader(value = "X-Gate-Id", required = false) String gateHeader,
+                                                       Authentication authentication) {
+        String gateId = gateId(gateHeader);
+        List<String> qrHashes = req.getQrHashes();
+        if (qrHashes == null || qrHashes.isEmpty() || qrHashes.size() > MAX_BATCH_SCANS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Entre 1 et " + MAX_BATCH_SCANS + " QR par lot");
+        }
+        if (qrHashes.stream().anyMatch(h -> h == null || h.isBlank())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "QR vide dans le lot");
+        }
+        List<ScanResult> results = ticketService.scanBatch(qrHashes);
+        scanLogService.record(gateId, authentication.getName(), results);
+        return ResponseEntity.ok(new BatchScanResponse(results));
+    }
+
+    //gates that do not identify themselves are logged together
+    private static String gateId(String header) {
+        if (header == null || header.isBlank()) {
+            return UNKNOWN_GATE;
+        }
+        if (!GATE_ID.matcher(header).matches()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "X-Gate-Id invalide : 1 à 64 caractères parmi lettres, chiffres, . _ -");
         }
+        return header;
     }
 
+    // --- DTO internes pour simplifier la réponse (billet : TicketSummary, même JSON) ---
     public static class ScanRequest {
         @Schema(description = "QR hash du billet")
         private String qrHash;
@@ -154,6 +204,17 @@ public class TicketController {
         public void setQrHash(String qrHash) { this.qrHash = qrHash; }
     }
 
+    public static class BatchScanRequest {
+        @Schema(description = "QR hash des billets scannés")
+        private List<String> qrHashes;
+        public List<String> getQrHashes() { return qrHashes; }
+        public void setQrHashes(List<String> qrHashes) { this.qrHashes = qrHashes; }
+    }
+
+    public static record BatchScanResponse(List<ScanResult> results) {}
+
+    public static record SignedQrResponse(Long ticketId, String qr) {}
+
     public static class ScanResponse {
         @Schema(description = "Statut du scan", example = "SCANNED")
         private String status;
@@ -0,0 +1,59 @@
+package com.ieolympicstickets.backend.controller;
+
+import com.ieolympicstickets.backend.service.WaitingRoomService;
+import com.ieolympicstickets.backend.service.WaitingRoomService.QueueStatus;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/waiting-room")
+@Tag(name = "Waiting room", description = "File d'attente à l'ouverture des ventes")
+public class WaitingRoomController {
+
+    private final WaitingRoomService waitingRoomService;
+
+    public WaitingRoomController(WaitingRoomService waitingRoomService) {
+        this.waitingRoomService = waitingRoomService;
+    }
+
+    @Operation(summary = "Rejoint la file d'attente d'un événement",
+            description = "Les jetons sont liés à l'utilisateur connecté, sinon à X-Session-Id")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Position et jeton de file, ou admission immédiate"),
+            @ApiResponse(responseCode = "400", description = "Ni utilisateur connecté ni X-Session-Id")
+    })
+    @PostMapping("/{eventId}/join")
+    public ResponseEntity<QueueStatus> join(
+            @PathVariable Long eventId,
+            @RequestHeader(name = "X-Session-Id", required = false) String sessionId,
+            Authentication authentication) {
+        return ResponseEntity.ok(waitingRoomService.join(eventId, email(authentication), sessionId));
+    }
+
+    @Operation(summary = "Position dans la file ; jeton d'admission quand le tour est arrivé")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Position ou jeton d'admission"),
+            @ApiResponse(responseCode = "400", description = "Jeton de file invalide ou antérieur au redémarrage"),
+            @ApiResponse(responseCode = "403", description = "Jeton de file d'un autre client"),
+            @ApiResponse(responseCode = "409", description = "Admission déjà délivrée pour ce numéro")
+    })
+    @GetMapping("/{eventId}/status")
+    public ResponseEntity<QueueStatus> status(
+            @PathVariable Long eventId,
+            @RequestHeader(name = "X-Queue-Token", required = false) String queueToken,
+            @RequestHeader(name = "X-Session-Id", required = false) String sessionId,
+            Authentication authentication) {
+        return ResponseEntity.ok(waitingRoomService.status(eventId, queueToken, email(authentication), sessionId));
+    }
+
+    private static String email(Authentication authentication) {
+        return authentication == null || authentication instanceof AnonymousAuthenticationToken
+                ? null : authentication.getName();
+    }
+}
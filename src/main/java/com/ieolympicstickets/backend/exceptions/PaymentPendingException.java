@@ -0,0 +1,22 @@
+package com.ieolympicstickets.backend.exceptions;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Le prestataire n'a pas répondu à temps : le paiement n'est ni accepté ni refusé,
+ * il peut encore aboutir. {@link #outcome()} donne la réponse quand elle arrive.
+ */
+public class PaymentPendingException extends PaymentException {
+
+    private final transient CompletableFuture<Boolean> outcome;
+
+    public PaymentPendingException(String message, CompletableFuture<Boolean> outcome) {
+        super(message);
+        this.outcome = outcome;
+    }
+
+    /** true si accepté, false si refusé, en exception si le prestataire a échoué */
+    public CompletableFuture<Boolean> outcome() {
+        return outcome;
+    }
+}
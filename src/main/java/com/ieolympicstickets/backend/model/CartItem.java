@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 
 @Getter
@@ -28,6 +29,16 @@ public class CartItem {
     @Column(name="quantity", nullable = false)
     private int quantity;
 
+    /**
+     * Stock bloqué pour cet article (réservé à l'ajout au panier).
+     * Rendu au stock par StockHoldService à l'échéance holdExpiresAt.
+     */
+    @Column(name="held_quantity", nullable = false, columnDefinition = "INT NOT NULL DEFAULT 0")
+    private int heldQuantity;
+
+    @Column(name="hold_expires_at")
+    private Instant holdExpiresAt;
+
     @Column(name="updated_at",insertable = false, updatable = false)
     private LocalDateTime updatedAt;
 
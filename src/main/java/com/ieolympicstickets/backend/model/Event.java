@@ -12,7 +12,7 @@ import java.time.LocalDateTime;
 @Getter
 @Setter
 @Entity
-@Table(name = "event")
+@Table(name = "event", indexes = @Index(name = "idx_event_datetime_id", columnList = "event_datetime, id"))
 public class Event {
     @Id
     @GeneratedValue(strategy=GenerationType.IDENTITY)
@@ -39,6 +39,10 @@ public class Event {
 
     private boolean featured;
 
+    //admissions per second to the cart/checkout when the sale opens; null = no waiting room
+    @Column(name = "waiting_room_rate")
+    private Integer waitingRoomRate;
+
     // Getters & Setters done via Lombok
 
 }
@@ -1,5 +1,6 @@
 package com.ieolympicstickets.backend.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.*;
 import lombok.Getter;
@@ -31,4 +32,20 @@ public class Offer {
     @NotNull
     @Min(0)
     private Integer stock;
+
+    /**
+     * Offre "flash-sale" : le stock est tenu en mémoire par HotStockLedger
+     * et reporté en base par lots (mono-instance : voir HotStockLedger).
+     */
+    @Column(name = "hot", nullable = false)
+    private boolean hot;
+
+    /**
+     * Unités (billets) déjà reportées dans stock par le ledger.
+     * Écrit uniquement par le ledger, sert à reconstruire son état au redémarrage.
+     */
+    @JsonIgnore
+    @Column(name = "ledger_consumed", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "INT NOT NULL DEFAULT 0")
+    private int ledgerConsumed;
 }
@@ -0,0 +1,14 @@
+package com.ieolympicstickets.backend.model;
+
+public enum OrderStatus {
+    //stock reserved, payment in progress
+    PENDING_PAYMENT,
+    //payment accepted, tickets not generated yet
+    PAID,
+    //paid, tickets being generated in the background
+    PENDING_ISSUANCE,
+    //tickets available
+    ISSUED,
+    //payment refused or never confirmed, stock given back
+    CANCELLED
+}
@@ -0,0 +1,48 @@
+package com.ieolympicstickets.backend.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Remboursement dû au client d'une commande annulée après que son paiement a été accepté,
+ * enregistré quand le prestataire n'a pas pu rembourser tout de suite.
+ * Retenté par la reprise des checkouts ; en attente tant que refundedAt est null.
+ */
+@Entity
+@Table(name = "payment_refund", indexes = @Index(name = "idx_payment_refund_pending", columnList = "refunded_at, payment_refund_id"))
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class PaymentRefund {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "payment_refund_id")
+    private Long id;
+
+    @Column(name = "order_id", nullable = false, unique = true, updatable = false)
+    private Long orderId;
+
+    @Column(nullable = false, updatable = false)
+    private BigDecimal amount;
+
+    /** Jeton du paiement, nécessaire au prestataire pour rembourser ; effacé une fois remboursé */
+    @JsonIgnore
+    @Column(name = "payment_token")
+    private String paymentToken;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "last_error")
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Column(name = "refunded_at")
+    private Instant refundedAt;
+}
@@ -0,0 +1,46 @@
+package com.ieolympicstickets.backend.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.Instant;
+
+/**
+ * Journal des scans aux portiques, en ajout seul : une ligne par QR présenté, accepté ou non.
+ * Écrit par lots par le ScanLogService (JDBC), jamais modifié.
+ */
+@Entity
+@Table(name = "scan_event", indexes = {
+        @Index(name = "idx_scan_event_gate_time", columnList = "gate_id, scanned_at"),
+        @Index(name = "idx_scan_event_ticket", columnList = "ticket_id")
+})
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class ScanEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "scan_event_id")
+    private Long id;
+
+    /** null si le QR ne correspond à aucun billet */
+    @Column(name = "ticket_id", updatable = false)
+    private Long ticketId;
+
+    /** QR présenté, conservé seulement s'il ne correspond à aucun billet */
+    @Column(name = "qr", updatable = false)
+    private String qr;
+
+    @Column(name = "gate_id", nullable = false, updatable = false, length = 64)
+    private String gateId;
+
+    /** email de l'employé authentifié */
+    @Column(name = "employee", nullable = false, updatable = false)
+    private String employee;
+
+    /** SCANNED, ALREADY_USED, NOT_FOUND ou INVALID */
+    @Column(name = "result", nullable = false, updatable = false, length = 16)
+    private String result;
+
+    @Column(name = "scanned_at", nullable = false, updatable = false)
+    private Instant scannedAt;
+}
@@ -9,13 +9,21 @@ import java.time.Instant;
  * On y stocke la "purchaseKey" et le "qrHash" = concat(accountKey, purchaseKey).
  */
 @Entity
-@Table(name = "ticket")
+@Table(name = "ticket", indexes = {
+        @Index(name = "idx_ticket_created_at", columnList = "created_at"),
+        @Index(name = "idx_ticket_used_at", columnList = "used_at")
+})
 @Getter @Setter
 @NoArgsConstructor @AllArgsConstructor
 @Builder
 public class Ticket {
+    /**
+     * Ids alloués par blocs de 50 (optimiseur pooled) : contrairement à IDENTITY,
+     * Hibernate peut regrouper les INSERT en batch JDBC.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ticket_seq")
+    @SequenceGenerator(name = "ticket_seq", sequenceName = "ticket_seq", allocationSize = 50)
     @Column(name = "ticket_id")
     private Long id;
 
@@ -43,6 +51,10 @@ public class Ticket {
     @Column(name = "created_at", nullable = false, updatable = false)
     private Instant createdAt;
 
+    /** Instant du scan, null tant que le billet n'est pas utilisé */
+    @Column(name = "used_at")
+    private Instant usedAt;
+
     @PrePersist
     protected void onCreate() {
         createdAt = Instant.now();
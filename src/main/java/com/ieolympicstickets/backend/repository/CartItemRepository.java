@@ -3,9 +3,16 @@ package com.ieolympicstickets.backend.repository;
 import com.ieolympicstickets.backend.model.Cart;
 import com.ieolympicstickets.backend.model.CartItem;
 import com.ieolympicstickets.backend.model.Offer;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,6 +23,36 @@ public interface CartItemRepository extends JpaRepository<CartItem, Long> {
 
     //find a specific item in a cart
     Optional<CartItem> findByCartAndOffer(Cart cart, Offer offer);
-}
 
+    //same, row locked: the hold expiry job cannot release it meanwhile
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select ci from CartItem ci where ci.cart = :cart and ci.offer = :offer")
+    Optional<CartItem> findByCartAndOfferForUpdate(@Param("cart") Cart cart, @Param("offer") Offer offer);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select ci from CartItem ci where ci.id = :id")
+    Optional<CartItem> findByIdForUpdate(@Param("id") Long id);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select ci from CartItem ci where ci.cart = :cart")
+    List<CartItem> findByCartForUpdate(@Param("cart") Cart cart);
+
+    //holds due among the given items
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select ci from CartItem ci where ci.id in :ids and ci.heldQuantity > 0 and ci.holdExpiresAt <= :now")
+    List<CartItem> findExpiredHoldsForUpdate(@Param("ids") Collection<Long> ids, @Param("now") Instant now);
 
+    //[cartItemId, holdExpiresAt] of every live hold, to re-arm the timers at startup
+    @Query("select ci.id, ci.holdExpiresAt from CartItem ci where ci.heldQuantity > 0")
+    List<Object[]> findHoldDeadlines();
+
+    /**
+     * Transforme le blocage en achat : 1 si le stock bloqué était toujours celui attendu.
+     */
+    @Modifying
+    @Query("update CartItem ci set ci.heldQuantity = 0, ci.holdExpiresAt = null where ci.id = :id and ci.heldQuantity = :held")
+    int consumeHold(@Param("id") Long id, @Param("held") int held);
+
+    @Query("select coalesce(sum(ci.heldQuantity), 0) from CartItem ci where ci.offer.offerId = :offerId")
+    long sumHeldQuantityByOfferId(@Param("offerId") Long offerId);
+}
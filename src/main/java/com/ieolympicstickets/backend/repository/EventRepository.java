@@ -1,9 +1,42 @@
 package com.ieolympicstickets.backend.repository;
 import com.ieolympicstickets.backend.model.Event;
+import com.ieolympicstickets.backend.repository.projection.EventSummary;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 
 public interface EventRepository extends JpaRepository<Event, Long> {
-    //We will see later
+    String SUMMARY = "com.ieolympicstickets.backend.repository.projection.EventSummary"
+            + "(e.id, e.title, e.eventDateTime, e.location, e.imageUrl, e.featured)";
+
+    //[eventId, admissions per second] of the events with a waiting room
+    @Query("select e.id, e.waitingRoomRate from Event e where e.waitingRoomRate is not null")
+    List<Object[]> findWaitingRoomRates();
+
+    @Query("select e from Event e order by e.eventDateTime, e.id")
+    List<Event> findAllOrdered();
+
+    List<Event> findByFeaturedTrueAndEventDateTimeAfter(LocalDateTime now);
+
+    //keyset pagination on (eventDateTime, id), index idx_event_datetime_id; Pageable only carries the limit
+    @Query("select e from Event e order by e.eventDateTime, e.id")
+    List<Event> findFirstPage(Pageable limit);
+
+    @Query("select e from Event e where e.eventDateTime > :at or (e.eventDateTime = :at and e.id > :id) "
+            + "order by e.eventDateTime, e.id")
+    List<Event> findPageAfter(@Param("at") LocalDateTime at, @Param("id") Long id, Pageable limit);
+
+    //same pages for the public list, without the description column
+    @Query("select new " + SUMMARY + " from Event e order by e.eventDateTime, e.id")
+    List<EventSummary> findSummaryFirstPage(Pageable limit);
+
+    @Query("select new " + SUMMARY + " from Event e "
+            + "where e.eventDateTime > :at or (e.eventDateTime = :at and e.id > :id) order by e.eventDateTime, e.id")
+    List<EventSummary> findSummaryPageAfter(@Param("at") LocalDateTime at, @Param("id") Long id, Pageable limit);
 }
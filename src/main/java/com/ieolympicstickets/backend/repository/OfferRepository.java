@@ -1,12 +1,83 @@
 package com.ieolympicstickets.backend.repository;
 
 import com.ieolympicstickets.backend.model.Offer;
+import com.ieolympicstickets.backend.repository.projection.OfferSummary;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface OfferRepository extends JpaRepository <Offer, Long> {
-    List<Offer> findByEventId(Long eventId);
+    String SUMMARY = "com.ieolympicstickets.backend.repository.projection.OfferSummary"
+            + "(o.offerId, o.name, o.price, o.stock, e.id, e.title, e.eventDateTime)";
+
+    //the event is EAGER: fetched in the same query instead of one select per offer
+    @Query("select o from Offer o join fetch o.event where o.event.id = :eventId order by o.offerId")
+    List<Offer> findByEventId(@Param("eventId") Long eventId);
+
+    //primary key lookups with the event in the same query (no second select when serialized)
+    @Query("select o from Offer o join fetch o.event where o.offerId = :offerId")
+    Optional<Offer> findWithEventByOfferId(@Param("offerId") Long offerId);
+
+    @Query("select o from Offer o join fetch o.event order by o.event.id, o.offerId")
+    List<Offer> findAllWithEvent();
+
+    @Query("select new " + SUMMARY + " from Offer o join o.event e where o.offerId in :offerIds")
+    List<OfferSummary> findSummariesByOfferIdIn(@Param("offerIds") Collection<Long> offerIds);
+
+    //keyset pagination on the primary key; Pageable only carries the limit
+    @Query("select o from Offer o join fetch o.event order by o.offerId")
+    List<Offer> findFirstPage(Pageable limit);
+
+    @Query("select o from Offer o join fetch o.event where o.offerId > :afterId order by o.offerId")
+    List<Offer> findPageAfter(@Param("afterId") Long afterId, Pageable limit);
+
+    //same pages for the public list: list columns only, event joined
+    @Query("select new " + SUMMARY + " from Offer o join o.event e order by o.offerId")
+    List<OfferSummary> findSummaryFirstPage(Pageable limit);
+
+    @Query("select new " + SUMMARY + " from Offer o join o.event e where o.offerId > :afterId order by o.offerId")
+    List<OfferSummary> findSummaryPageAfter(@Param("afterId") Long afterId, Pageable limit);
+
+    /**
+     * Décrément atomique : ne touche la ligne que si le stock suffit.
+     * ledger_consumed suit le stock, pour qu'une offre repassée en mémoire se reconstruise juste.
+     * @return 1 si la quantité a été réservée, 0 sinon
+     */
+    @Modifying
+    @Query(value = "UPDATE offer SET stock = stock - :qty, ledger_consumed = ledger_consumed + :qty"
+            + " WHERE offer_id = :offerId AND stock >= :qty", nativeQuery = true)
+    int reserveStock(@Param("offerId") Long offerId, @Param("qty") int qty);
+
+    /** Remet en stock une quantité réservée (paiement refusé, annulation...) */
+    @Modifying
+    @Query(value = "UPDATE offer SET stock = stock + :qty, ledger_consumed = ledger_consumed - :qty"
+            + " WHERE offer_id = :offerId", nativeQuery = true)
+    int releaseStock(@Param("offerId") Long offerId, @Param("qty") int qty);
+
+    List<Offer> findByHotTrue();
+
+    /** Recale une offre "hot" : stock restant et unités déjà reportées par le ledger */
+    @Modifying
+    @Query(value = "UPDATE offer SET stock = :stock, ledger_consumed = :consumed WHERE offer_id = :offerId",
+            nativeQuery = true)
+    int resetLedger(@Param("offerId") Long offerId, @Param("stock") int stock, @Param("consumed") long consumed);
+
+    @Query("select o.ledgerConsumed from Offer o where o.offerId = :offerId")
+    Integer findLedgerConsumedByOfferId(@Param("offerId") Long offerId);
+
+    //[eventId, offerId, stock] of the given events
+    @Query("select o.event.id, o.offerId, o.stock from Offer o where o.event.id in :eventIds")
+    List<Object[]> findStockByEventIdIn(@Param("eventIds") Collection<Long> eventIds);
+
+    //stock lu en base, sans passer par le cache de session
+    @Query("select o.stock from Offer o where o.offerId = :offerId")
+    Integer findStockByOfferId(@Param("offerId") Long offerId);
 }
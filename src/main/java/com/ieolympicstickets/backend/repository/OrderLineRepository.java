@@ -0,0 +1,24 @@
+package com.ieolympicstickets.backend.repository;
+
+import com.ieolympicstickets.backend.model.OrderLine;
+import com.ieolympicstickets.backend.model.OrderStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OrderLineRepository extends JpaRepository<OrderLine, Long> {
+    //lines with their offer, one query
+    @Query("select l from OrderLine l join fetch l.offer where l.order.id = :orderId order by l.id")
+    List<OrderLine> findByOrderIdWithOffer(@Param("orderId") Long orderId);
+
+    //units of an offer in orders at the given statuses
+    @Query("select coalesce(sum(l.quantity), 0) from OrderLine l "
+            + "where l.offer.offerId = :offerId and l.order.status in :statuses")
+    long sumQuantityByOfferIdAndOrderStatusIn(@Param("offerId") Long offerId,
+                                              @Param("statuses") Collection<OrderStatus> statuses);
+}
@@ -1,14 +1,48 @@
 package com.ieolympicstickets.backend.repository;
 
 import com.ieolympicstickets.backend.model.Order;
+import com.ieolympicstickets.backend.model.OrderStatus;
 import com.ieolympicstickets.backend.model.User;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findByUser(User user);
-}
 
+    //keyset pagination, newest first, on index idx_orders_user_created (user_id, created_at, order_id)
+    @Query("select o from Order o where o.user = :user order by o.createdAt desc, o.id desc")
+    List<Order> findFirstPageByUser(@Param("user") User user, Pageable limit);
+
+    @Query("select o from Order o where o.user = :user and (o.createdAt < :at or (o.createdAt = :at and o.id < :id)) "
+            + "order by o.createdAt desc, o.id desc")
+    List<Order> findPageByUserBefore(@Param("user") User user, @Param("at") LocalDateTime at,
+                                     @Param("id") Long id, Pageable limit);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select o from Order o where o.id = :id")
+    Optional<Order> findByIdForUpdate(@Param("id") Long id);
+
+    //orders stuck in a status since before the given date
+    @Query("select o.id from Order o where o.status = :status and o.createdAt < :before order by o.id")
+    List<Long> findIdsByStatusCreatedBefore(@Param("status") OrderStatus status,
+                                            @Param("before") LocalDateTime before);
+
+    //compare-and-set on the status: 1 if the order was still in 'from'.
+    //clear: a bulk update bypasses the persistence context, lockOrder must not return the old status
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Order o set o.status = :to where o.id = :id and o.status = :from")
+    int transition(@Param("id") Long id,
+                   @Param("from") OrderStatus from,
+                   @Param("to") OrderStatus to);
+}
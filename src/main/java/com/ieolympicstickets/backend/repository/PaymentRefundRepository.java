@@ -0,0 +1,26 @@
+package com.ieolympicstickets.backend.repository;
+
+import com.ieolympicstickets.backend.model.PaymentRefund;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface PaymentRefundRepository extends JpaRepository<PaymentRefund, Long> {
+
+    @Query("select r from PaymentRefund r where r.refundedAt is null order by r.id")
+    List<PaymentRefund> findPending();
+
+    @Query("select r.id from PaymentRefund r where r.refundedAt is null and r.attempts < :maxAttempts order by r.id")
+    List<Long> findRetryableIds(@Param("maxAttempts") int maxAttempts);
+
+    //compare-and-set on attempts: 1 if no other instance started this attempt first
+    @Modifying
+    @Query("update PaymentRefund r set r.attempts = r.attempts + 1 "
+            + "where r.id = :id and r.attempts = :attempts and r.refundedAt is null")
+    int claimAttempt(@Param("id") Long id, @Param("attempts") int attempts);
+}
@@ -2,9 +2,20 @@ package com.ieolympicstickets.backend.repository;
 
 import com.ieolympicstickets.backend.model.Ticket;
 import com.ieolympicstickets.backend.model.User;
+import com.ieolympicstickets.backend.repository.projection.OrderItemSummary;
+import com.ieolympicstickets.backend.repository.projection.TicketSummary;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,10 +25,91 @@ public interface TicketRepository extends JpaRepository<Ticket, Long> {
 
     List<Ticket> findByUser(User user);
 
+    String SUMMARY = "com.ieolympicstickets.backend.repository.projection.TicketSummary"
+            + "(t.id, e.id, e.title, e.eventDateTime, t.qrHash, t.used, t.order.id, o.offerId)";
+
+    //wallet: keyset pagination by event date then ticket id, offer and event joined in the same query
+    @Query("select new " + SUMMARY + " from Ticket t join t.offer o join o.event e where t.user = :user "
+            + "order by e.eventDateTime, t.id")
+    List<TicketSummary> findFirstPageByUser(@Param("user") User user, Pageable limit);
+
+    @Query("select new " + SUMMARY + " from Ticket t join t.offer o join o.event e where t.user = :user "
+            + "and (e.eventDateTime > :at or (e.eventDateTime = :at and t.id > :id)) "
+            + "order by e.eventDateTime, t.id")
+    List<TicketSummary> findPageByUserAfter(@Param("user") User user, @Param("at") LocalDateTime at,
+                                            @Param("id") Long id, Pageable limit);
+
+    @Query("select new " + SUMMARY + " from Ticket t join t.offer o join o.event e "
+            + "where t.id = :id and t.user = :user")
+    Optional<TicketSummary> findSummaryByIdAndUser(@Param("id") Long id, @Param("user") User user);
+
+    @Query("select new com.ieolympicstickets.backend.repository.projection.OrderItemSummary"
+            + "(o.offerId, o.name, t.qrHash, t.used) from Ticket t join t.offer o where t.order.id = :orderId "
+            + "order by t.id")
+    List<OrderItemSummary> findItemsByOrderId(@Param("orderId") Long orderId);
+
     Optional<Ticket> findByQrHash(String qrHash);
 
+    boolean existsByQrHash(String qrHash);
+
+    //scan index loading: [eventId, ticket count], then [ticketId, qrHash, used, eventId] rows
+    @Query("select o.event.id, count(t) from Ticket t join t.offer o group by o.event.id")
+    List<Object[]> countByEvent();
+
+    @Query("select t.id, t.qrHash, t.used, o.event.id from Ticket t join t.offer o where t.id > :afterId order by t.id")
+    List<Object[]> findScanIndexPage(@Param("afterId") Long afterId, Pageable limit);
+
+    @Query("select t.id, t.qrHash, t.used, o.event.id from Ticket t join t.offer o where t.createdAt >= :since")
+    List<Object[]> findScanIndexCreatedSince(@Param("since") Instant since);
+
+    //gate feed: [ticketId, qrHash] of the valid tickets of an event, then the changes since a given instant
+    @Query("select t.id, t.qrHash from Ticket t join t.offer o "
+            + "where o.event.id = :eventId and t.used = false and t.id > :afterId order by t.id")
+    List<Object[]> findValidQrHashPage(@Param("eventId") Long eventId, @Param("afterId") Long afterId, Pageable limit);
+
+    @Query("select t.qrHash from Ticket t join t.offer o where o.event.id = :eventId and t.createdAt > :since")
+    List<String> findQrHashesIssuedSince(@Param("eventId") Long eventId, @Param("since") Instant since);
+
+    @Query("select t.qrHash from Ticket t join t.offer o where o.event.id = :eventId and t.usedAt > :since")
+    List<String> findQrHashesUsedSince(@Param("eventId") Long eventId, @Param("since") Instant since);
+
+    //scan log: [ticketId, qrHash]
+    @Query("select t.id, t.qrHash from Ticket t where t.qrHash in :qrHashes")
+    List<Object[]> findIdsByQrHashIn(@Param("qrHashes") Collection<String> qrHashes);
+
+    /**
+     * Scan : passe le billet à utilisé seulement s'il ne l'est pas déjà, en une instruction.
+     * @return 1 si le billet vient d'être validé, 0 s'il était déjà utilisé ou n'existe pas
+     */
+    @Modifying
+    @Query("update Ticket t set t.used = true, t.usedAt = :now where t.qrHash = :qrHash and t.used = false")
+    int markUsed(@Param("qrHash") String qrHash, @Param("now") Instant now);
+
+    //batch scan: rows locked until the end of the transaction, then marked in one update
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select t from Ticket t where t.qrHash in :qrHashes")
+    List<Ticket> findByQrHashInForUpdate(@Param("qrHashes") Collection<String> qrHashes);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select t from Ticket t where t.id in :ids")
+    List<Ticket> findByIdInForUpdate(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("update Ticket t set t.used = true, t.usedAt = :now where t.id = :id and t.used = false")
+    int markUsedById(@Param("id") Long id, @Param("now") Instant now);
+
+    //signed scan: the QR carries the id, the scan index is keyed by qrHash
+    @Query("select t.qrHash from Ticket t where t.id = :id")
+    Optional<String> findQrHashById(@Param("id") Long id);
+
+    @Modifying
+    @Query("update Ticket t set t.used = true, t.usedAt = :now where t.id in :ids and t.used = false")
+    int markUsedByIdIn(@Param("ids") Collection<Long> ids, @Param("now") Instant now);
+
     long countByOfferOfferId(Long offerId);
 
+    long countByOrderId(Long orderId);
+
 
     // Si besoin de trier par date de l'événement :
     // List<Ticket> findByUserOrderByOfferEventEventDateTime(User user);
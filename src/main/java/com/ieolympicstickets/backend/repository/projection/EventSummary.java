@@ -0,0 +1,9 @@
+package com.ieolympicstickets.backend.repository.projection;
+
+import java.time.LocalDateTime;
+
+/**
+ * Épreuve telle qu'affichée dans les listes : sans la description.
+ */
+public record EventSummary(Long id, String title, LocalDateTime eventDateTime, String location,
+                           String imageUrl, boolean featured) {}
@@ -0,0 +1,11 @@
+package com.ieolympicstickets.backend.repository.projection;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Offre telle qu'affichée dans les listes, avec le titre et la date de son épreuve
+ * lus dans la même requête.
+ */
+public record OfferSummary(Long offerId, String name, BigDecimal price, Integer stock,
+                           Long eventId, String eventTitle, LocalDateTime eventDateTime) {}
@@ -0,0 +1,6 @@
+package com.ieolympicstickets.backend.repository.projection;
+
+/**
+ * Billet d'une commande avec le nom de son offre, lu en une requête.
+ */
+public record OrderItemSummary(Long offerId, String offerName, String qrHash, boolean used) {}
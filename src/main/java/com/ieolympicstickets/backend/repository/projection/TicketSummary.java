@@ -0,0 +1,9 @@
+package com.ieolympicstickets.backend.repository.projection;
+
+import java.time.LocalDateTime;
+
+/**
+ * Billet du portefeuille, avec son épreuve et sa commande, lu en une requête.
+ */
+public record TicketSummary(Long ticketId, Long eventId, String eventTitle, LocalDateTime eventDateTime,
+                            String qrHash, boolean used, Long orderId, Long offerId) {}
@@ -0,0 +1,127 @@
+package com.ieolympicstickets.backend.security;
+
+import com.ieolympicstickets.backend.util.TokenBucketRateLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limite le débit par client, avant l'authentification JWT.
+ * <p>
+ * Client = sujet du JWT s'il est valide, sinon X-Session-Id (invité), sinon IP.
+ * Login et inscription sont limités par IP : c'est là que portent les attaques par force brute.
+ * Au-delà de la limite : 429 avec Retry-After.
+ * <p>
+ * L'IP est celle du client, pas celle du proxy : server.forward-headers-strategy fait lire
+ * X-Forwarded-For quand la requête vient d'un proxy de confiance. Un X-Session-Id inconnu
+ * coûte un jeton de la politique "sessions" de son IP : au-delà, le client est limité par IP,
+ * ce qui borne le nombre de seaux qu'une IP peut créer en changeant de session à chaque requête.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final JwtService jwtService;
+    private final TokenBucketRateLimiter limiter;
+    private final MeterRegistry meterRegistry;
+    private final Policy auth;
+    private final Policy cart;
+    private final Policy scan;
+    private final Policy standard;
+    private final Policy sessions;
+
+    public RateLimitFilter(JwtService jwtService, MeterRegistry meterRegistry, int maxClients,
+                           Policy auth, Policy cart, Policy scan, Policy standard, Policy sessions) {
+        this.jwtService = jwtService;
+        this.meterRegistry = meterRegistry;
+        this.limiter = new TokenBucketRateLimiter(maxClients);
+        this.auth = auth;
+        this.cart = cart;
+        this.scan = scan;
+        this.standard = standard;
+        this.sessions = sessions;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain)
+            throws ServletException, IOException {
+        Policy policy = policyFor(request.getServletPath());
+        String client = policy == auth ? "ip:" + request.getRemoteAddr() : clientOf(request, policy);
+        long waitNanos = limiter.tryAcquire(policy.name() + ":" + client, policy.ratePerSecond(), policy.burst());
+        if (waitNanos > 0) {
+            meterRegistry.counter("http.rate_limited", "policy", policy.name()).increment();
+            long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L));
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\":\"Trop de requêtes, réessayez dans " + retryAfter + " s\"}");
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // Toujours autoriser le pré-vol CORS
+        return "OPTIONS".equalsIgnoreCase(request.getMethod());
+    }
+
+    /** Oublie les clients inactifs : leur seau est de nouveau plein */
+    @Scheduled(fixedDelayString = "${rate-limit.evict-ms:10000}")
+    public void evictIdle() {
+        limiter.evictIdle();
+    }
+
+    private Policy policyFor(String path) {
+        if (path.equals("/api/auth/login") || path.equals("/api/auth/register")) {
+            return auth;
+        }
+        if (path.startsWith("/api/tickets/scan")) {
+            return scan;
+        }
+        if (path.equals("/api/cart") || path.startsWith("/api/cart/")) {
+            return cart;
+        }
+        return standard;
+    }
+
+    private String clientOf(HttpServletRequest request, Policy policy) {
+        String authHeader = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            try {
+                return "user:" + jwtService.extractSubject(authHeader.substring(7));
+            } catch (RuntimeException ex) {
+                //invalid token: rejected later by the JWT filter, limited by IP meanwhile
+                return "ip:" + request.getRemoteAddr();
+            }
+        }
+        String sessionId = request.getHeader("X-Session-Id");
+        if (sessionId != null && !sessionId.isBlank()) {
+            String client = "session:" + sessionId;
+            if (limiter.contains(policy.name() + ":" + client)
+                    || limiter.tryAcquire(sessions.name() + ":ip:" + request.getRemoteAddr(),
+                    sessions.ratePerSecond(), sessions.burst()) == 0) {
+                return client;
+            }
+            //too many new sessions from this IP
+            meterRegistry.counter("http.rate_limited.sessions").increment();
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    /**
+     * @param ratePerSecond requêtes par seconde en régime continu
+     * @param burst         requêtes acceptées d'affilée
+     */
+    public record Policy(String name, double ratePerSecond, int burst) {}
+}
@@ -6,58 +6,84 @@ import com.ieolympicstickets.backend.model.Offer;
 import com.ieolympicstickets.backend.model.User;
 import com.ieolympicstickets.backend.repository.CartItemRepository;
 import com.ieolympicstickets.backend.repository.OfferRepository;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
 import com.ieolympicstickets.backend.exceptions.OfferNotFoundException;
 import com.ieolympicstickets.backend.exceptions.CartNotFoundException;
 
+import java.util.List;
+
 @Service
 public class CartItemService {
     private final CartItemRepository cartItemRepository;
     private final CartService cartService;
     private final OfferRepository offerRepository;
+    private final StockHoldService stockHoldService;
+    private final WaitingRoomService waitingRoomService;
 
     public CartItemService(
             CartItemRepository cartItemRepository,
             CartService cartService,
-            OfferRepository offerRepository
+            OfferRepository offerRepository,
+            StockHoldService stockHoldService,
+            WaitingRoomService waitingRoomService
     ) {
         this.cartItemRepository = cartItemRepository;
         this.cartService = cartService;
         this.offerRepository = offerRepository;
+        this.stockHoldService = stockHoldService;
+        this.waitingRoomService = waitingRoomService;
     }
 
-    //add or increase quantity in a cart
+    //add or increase quantity in a cart - stock is held for the cart until the hold expires
     @Transactional
-    public Cart addItem(String sessionId, User user, Long offerId, int quantity) {
-        Cart cart = cartService.getOrCreateCart(sessionId, user);
+    public Cart addItem(String sessionId, User user, Long offerId, int quantity, String admissionTokens) {
+        if (quantity <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Quantité invalide : " + quantity);
+        }
         Offer offer = offerRepository.findById(offerId)
                 .orElseThrow(()-> new OfferNotFoundException(offerId));
+        waitingRoomService.requireAdmission(List.of(offer.getEvent().getId()), admissionTokens,
+                user == null ? null : user.getEmail(), sessionId);
+        Cart cart = cartService.getOrCreateCart(sessionId, user);
         CartItem item = cartItemRepository
-                .findByCartAndOffer(cart, offer)
+                .findByCartAndOfferForUpdate(cart, offer)
                 .orElseGet(() -> new CartItem(cart, offer, 0));
-        item.setQuantity(item.getQuantity() + quantity);
+        int newQuantity = item.getQuantity() + quantity;
+        stockHoldService.hold(item, newQuantity);
+        item.setQuantity(newQuantity);
         item.setCart(cart);
         item.setOffer(offer);
         cartItemRepository.save(item);
+        stockHoldService.schedule(item);
         return cart;
     }
 
     //update quantity of an existing item
     @Transactional
-    public Cart updateItem(String sessionId, User user, Long itemId, int quantity) {
+    public Cart updateItem(String sessionId, User user, Long itemId, int quantity, String admissionTokens) {
         Cart cart = cartService.getCart(sessionId, user)
                 .orElseThrow(()-> new CartNotFoundException("Panier introuvable"));
-        CartItem item = cartItemRepository.findById(itemId)
+        CartItem item = cartItemRepository.findByIdForUpdate(itemId)
                 .orElseThrow(() ->new IllegalArgumentException("Item not found" + itemId));
         if(!item.getCart().getId().equals(cart.getId())) {
             throw new IllegalArgumentException("Item does not belong to this cart");
         }
         if(quantity<= 0){
+            stockHoldService.releaseHold(item);
             cartItemRepository.delete(item);
         }else {
+            //lowering a quantity gives stock back, no admission needed
+            if (quantity > item.getQuantity()) {
+                waitingRoomService.requireAdmission(List.of(item.getOffer().getEvent().getId()), admissionTokens,
+                        user == null ? null : user.getEmail(), sessionId);
+            }
+            stockHoldService.hold(item, quantity);
             item.setQuantity(quantity);
             cartItemRepository.save(item);
+            stockHoldService.schedule(item);
         }
         return cart;
     }
@@ -67,11 +93,12 @@ public class CartItemService {
     public Cart removeItem(String sessionId, User user, Long itemId) {
         Cart cart = cartService.getCart(sessionId, user)
                 .orElseThrow(() -> new CartNotFoundException("Panier introuvable"));
-        CartItem item = cartItemRepository.findById(itemId)
+        CartItem item = cartItemRepository.findByIdForUpdate(itemId)
                 .orElseThrow(()-> new IllegalArgumentException("Item not found" + itemId));
         if (!item.getCart().getId().equals(cart.getId())) {
             throw new IllegalArgumentException("Item does not belong to this cart");
         }
+        stockHoldService.releaseHold(item);
         cartItemRepository.delete(item);
         return cart;
     }
@@ -2,132 +2,252 @@ package com.ieolympicstickets.backend.service;
 
 import com.ieolympicstickets.backend.controller.CartController.ValidateCartResponse;
 import com.ieolympicstickets.backend.exceptions.PaymentException;
+import com.ieolympicstickets.backend.exceptions.PaymentPendingException;
 import com.ieolympicstickets.backend.model.*;
+import com.ieolympicstickets.backend.repository.CartItemRepository;
 import com.ieolympicstickets.backend.repository.CartRepository;
 import com.ieolympicstickets.backend.repository.OfferRepository;
-import com.ieolympicstickets.backend.repository.TicketRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import com.ieolympicstickets.backend.service.PaymentService;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
 
 
 @Service
 public class CartService {
 
+    private static final Logger log = LoggerFactory.getLogger(CartService.class);
+
     private final CartRepository cartRepository;
     private final OfferRepository offerRepository;
     //private final StripeService stripeService;
-    private final TicketRepository ticketRepository;
+    private final CheckoutCompletionService checkoutCompletionService;
     private final PaymentService paymentService;
     private final OrderService orderService;
+    private final InventoryService inventoryService;
+    private final CartItemRepository cartItemRepository;
+    private final StockHoldService stockHoldService;
+    private final TransactionTemplate transactionTemplate;
+    private final WaitingRoomService waitingRoomService;
+    private final RefundService refundService;
 
     public CartService(
             CartRepository cartRepository,
             OfferRepository offerRepository,
             //StripeService stripeService,
-            TicketRepository ticketRepository,
+            CheckoutCompletionService checkoutCompletionService,
             PaymentService paymentService,
-            OrderService orderService
+            OrderService orderService,
+            InventoryService inventoryService,
+            CartItemRepository cartItemRepository,
+            StockHoldService stockHoldService,
+            TransactionTemplate transactionTemplate,
+            WaitingRoomService waitingRoomService,
+            RefundService refundService
 
    ) {
         this.cartRepository = cartRepository;
         this.offerRepository = offerRepository;
-        this.ticketRepository = ticketRepository;
+        this.checkoutCompletionService = checkoutCompletionService;
         this.paymentService  = paymentService;
         this.orderService = orderService;
+        this.inventoryService = inventoryService;
+        this.cartItemRepository = cartItemRepository;
+        this.stockHoldService = stockHoldService;
+        this.transactionTemplate = transactionTemplate;
+        this.waitingRoomService = waitingRoomService;
+        this.refundService = refundService;
     }
 
-    @Transactional
-    public ValidateCartResponse validateCart(Long cartId, User user, String paymentToken) {
+    /**
+     * Checkout en trois phases, pour qu'aucune connexion ne reste prise pendant le paiement :
+     * <ol>
+     *     <li>réservation : stock réservé, commande PENDING_PAYMENT avec ses lignes (transaction courte)</li>
+     *     <li>paiement, hors transaction</li>
+     *     <li>finalisation : commande PAID, billets, panier vidé ; ou compensation si le paiement échoue</li>
+     * </ol>
+     * Une commande restée entre deux phases (crash) est reprise par {@link CheckoutRecoveryService}.
+     */
+    public ValidateCartResponse validateCart(Long cartId, User user, String paymentToken, String admissionTokens) {
+        //Phase 1: reserve
+        PendingCheckout pending = transactionTemplate.execute(status -> reserve(cartId, user, admissionTokens, status));
+        if (pending.failure() != null) {
+            return pending.failure();
+        }
+        BigDecimal total = pending.total();
+        Long orderId = pending.orderId();
+        List<String> errors = new ArrayList<>();
+
+        /**
+        // Simulate payment via Stripe mock
+        try {
+            stripeService.pay(
+                    total.multiply(BigDecimal.valueOf(100)).intValue(),
+                    "eur"
+            );
+        } catch (StripeException e) {
+            errors.add("Erreur de paiement : " + e.getMessage());
+            return new ValidateCartResponse(false, total, errors, List.of(), null, null);
+        }*/
+
+        //Phase 2: mock payment service, no transaction open
+        try {
+            if (!paymentService.pay(total, paymentToken)) {
+                orderService.cancelUnpaid(orderId);
+                errors.add("Paiement refusé");
+                return new ValidateCartResponse(false, total, errors, List.of(), orderId, OrderStatus.CANCELLED.name());
+            }
+        } catch (PaymentPendingException e) {
+            //no answer in time: the card may still be charged, the order stays PENDING_PAYMENT until it is known
+            e.outcome().whenComplete((accepted, failure) ->
+                    settleLatePayment(cartId, orderId, total, paymentToken, accepted, failure));
+            errors.add(e.getMessage());
+            return new ValidateCartResponse(false, total, errors, List.of(), orderId, OrderStatus.PENDING_PAYMENT.name());
+        } catch (PaymentException e) {
+            //refused before reaching the gateway, or gateway error: nothing was charged
+            orderService.cancelUnpaid(orderId);
+            errors.add("Erreur de paiement : " + e.getMessage());
+            return new ValidateCartResponse(false, total, errors, List.of(e.getMessage()), orderId, OrderStatus.CANCELLED.name());
+        }
+        if (!orderService.markPaid(orderId)) {
+            //the recovery job gave up on this order while we were paying
+            refundService.refund(orderId, total, paymentToken);
+            errors.add("Délai de paiement dépassé, le paiement va être remboursé");
+            return new ValidateCartResponse(false, total, errors, List.of(), orderId, OrderStatus.CANCELLED.name());
+        }
+
+        //Phase 3: tickets and cart; if this fails the order stays PAID and the recovery job issues the tickets
+        try {
+            return transactionTemplate.execute(status -> complete(cartId, orderId, total, errors));
+        } catch (RuntimeException ex) {
+            log.error("Checkout completion failed for paid order {}, left to recovery", orderId, ex);
+            return new ValidateCartResponse(true, total, errors, List.of(), orderId, OrderStatus.PAID.name());
+        }
+    }
+
+    private PendingCheckout reserve(Long cartId, User user, String admissionTokens, TransactionStatus tx) {
         Cart cart = cartRepository.findById(cartId)
                 .orElseThrow(() -> new IllegalArgumentException("Panier introuvable : " + cartId));
 
         if (cart.getUser() == null || !cart.getUser().getId().equals(user.getId())) {
-            return new ValidateCartResponse(
+            return PendingCheckout.failed(new ValidateCartResponse(
                     false,
                     BigDecimal.ZERO,
                     List.of("Vous n'êtes pas autorisé à valider ce panier."),
-                    List.of()
-            );
+                    List.of(),
+                    null,
+                    null
+            ));
         }
 
         BigDecimal total = BigDecimal.ZERO;
         List<String> errors = new ArrayList<>();
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        Map<Long, Integer> held = new LinkedHashMap<>();
+        Map<Long, Offer> offers = new LinkedHashMap<>();
         for (CartItem item : cart.getItems()) {
             Offer offer = offerRepository.findById(item.getOffer().getOfferId())
                     .orElseThrow(() -> new IllegalStateException(
                             "Offre introuvable pour l'item " + item.getId()
                     ));
             int qty = item.getQuantity();
-            if (offer.getStock() < qty) {
-                errors.add(String.format(
-                        "Rupture de stock pour '%s' : demandé %d, disponible %d",
-                        offer.getName(), qty, offer.getStock()
-                ));
-            }
+            quantities.merge(offer.getOfferId(), qty, Integer::sum);
+            offers.put(offer.getOfferId(), offer);
             total = total.add(offer.getPrice().multiply(BigDecimal.valueOf(qty)));
+            //stock held at add-to-cart is already ours, unless the expiry job released it meanwhile
+            int itemHeld = item.getHeldQuantity();
+            if (itemHeld > 0 && cartItemRepository.consumeHold(item.getId(), itemHeld) == 1) {
+                held.merge(offer.getOfferId(), itemHeld, Integer::sum);
+            }
         }
 
-        if (!errors.isEmpty()) {
-            return new ValidateCartResponse(false, total, errors, List.of());
+        //events in a waiting room only accept admitted buyers: the user, or the guest session the cart came from
+        waitingRoomService.requireAdmission(
+                offers.values().stream().map(o -> o.getEvent().getId()).distinct().toList(), admissionTokens,
+                user.getEmail(), cart.getSessionId());
+
+        //Reserve what is not held: one conditional update per offer, nothing is taken if one is short
+        Map<Long, Integer> missing = new LinkedHashMap<>();
+        Map<Long, Integer> surplus = new LinkedHashMap<>();
+        quantities.forEach((offerId, qty) -> {
+            int diff = qty - held.getOrDefault(offerId, 0);
+            if (diff > 0) {
+                missing.put(offerId, diff);
+            } else if (diff < 0) {
+                surplus.put(offerId, -diff);
+            }
+        });
+        StockReservation reservation = inventoryService.reserve(missing);
+        if (!reservation.isSuccessful()) {
+            reservation.getShortages().forEach((offerId, available) -> errors.add(String.format(
+                    "Rupture de stock pour '%s' : demandé %d, disponible %d",
+                    offers.get(offerId).getName(), quantities.get(offerId),
+                    available + held.getOrDefault(offerId, 0)
+            )));
+            //keep the cart holds as they were
+            tx.setRollbackOnly();
+            return PendingCheckout.failed(new ValidateCartResponse(false, total, errors, List.of(), null, null));
         }
+        inventoryService.releaseUnits(surplus);
 
+        //the order owns the stock from now on: the lines say what to give back if payment fails
+        List<OrderLine> lines = new ArrayList<>();
+        quantities.forEach((offerId, qty) -> lines.add(OrderLine.builder()
+                .offer(offers.get(offerId))
+                .quantity(qty)
+                .unitPrice(offers.get(offerId).getPrice())
+                .build()));
+        Order order = orderService.createOrder(user, total, OrderStatus.PENDING_PAYMENT, lines);
+        return new PendingCheckout(null, order.getId(), total);
+    }
 
-        /**
-        // Simulate payment via Stripe mock
-        try {
-            stripeService.pay(
-                    total.multiply(BigDecimal.valueOf(100)).intValue(),
-                    "eur"
-            );
-        } catch (StripeException e) {
-            errors.add("Erreur de paiement : " + e.getMessage());
-            return new ValidateCartResponse(false, total, errors, List.of());
-        }*/
+    private ValidateCartResponse complete(Long cartId, Long orderId, BigDecimal total, List<String> errors) {
+        CheckoutCompletionService.Completion done = checkoutCompletionService.complete(orderId, cartId);
+        return new ValidateCartResponse(true, total, errors, done.qrHashes(), orderId, done.order().getStatus().name());
+    }
 
-        //Mock payment service
+    /**
+     * Réponse tardive d'un paiement en timeout : refus ou erreur, la commande est annulée ;
+     * acceptation, elle est finalisée comme un checkout normal, ou remboursée si la reprise
+     * l'a annulée entre-temps.
+     */
+    private void settleLatePayment(Long cartId, Long orderId, BigDecimal total, String paymentToken,
+                                   Boolean accepted, Throwable failure) {
         try {
-            paymentService.pay(total, paymentToken);
-        } catch (PaymentException e) {
-            errors.add("Erreur de paiement : " + e.getMessage());
-            return new ValidateCartResponse(false, total, errors, List.of(e.getMessage()));
-        }
-
-        //Create an order
-        Order order = orderService.createOrder(user, total);
-
-        // Generate tickets and QR hashes
-        String accountKey = user.getUserKey();
-        List<String> qrHashes = new ArrayList<>();
-        for (CartItem item : cart.getItems()) {
-            Offer offer = offerRepository.findById(item.getOffer().getOfferId())
-                    .orElseThrow();
-            for (int i = 0; i < item.getQuantity(); i++) {
-                String purchaseKey = UUID.randomUUID().toString();
-                String qrHash = accountKey + purchaseKey;
-                Ticket ticket = Ticket.builder()
-                        .user(user)
-                        .order(order)
-                        .offer(offer)
-                        .purchaseKey(purchaseKey)
-                        .qrHash(qrHash)
-                        .used(false)
-                        .build();
-                ticketRepository.save(ticket);
-                qrHashes.add(qrHash);
+            if (failure != null || !Boolean.TRUE.equals(accepted)) {
+                if (orderService.cancelUnpaid(orderId)) {
+                    log.info("Late payment of order {} not accepted, order cancelled", orderId);
+                }
+                return;
             }
+            if (!orderService.markPaid(orderId)) {
+                refundService.refund(orderId, total, paymentToken);
+                log.warn("Late payment of order {} accepted after its cancellation, refund requested", orderId);
+                return;
+            }
+            transactionTemplate.execute(status -> complete(cartId, orderId, total, new ArrayList<>()));
+            log.info("Late payment of order {} accepted, order completed", orderId);
+        } catch (RuntimeException ex) {
+            //PENDING_PAYMENT or PAID: the recovery job takes over
+            log.error("Late payment settlement failed for order {}, left to recovery", orderId, ex);
         }
-        //empty cart after purchase
-        cart.getItems().clear();
-        cartRepository.save(cart);
+    }
 
-        return new ValidateCartResponse(true, total, errors, qrHashes);
+    //outcome of phase 1: either a failure response, or the order waiting for payment
+    private record PendingCheckout(ValidateCartResponse failure, Long orderId, BigDecimal total) {
+        static PendingCheckout failed(ValidateCartResponse failure) {
+            return new PendingCheckout(failure, null, null);
+        }
     }
 
     @Transactional
@@ -191,26 +311,38 @@ public class CartService {
 
         Cart guestCart = guestOpt.get();
         // --- fusion des items ---
-        for (CartItem gi : guestCart.getItems()) {
+        //guest rows locked: the hold expiry job must not release stock we are moving
+        for (CartItem gi : cartItemRepository.findByCartForUpdate(guestCart)) {
             gi.setCart(null);             // détache le guestItem
             Optional<CartItem> existing =
                     userCart.getItems().stream()
                             .filter(ui -> ui.getOffer().getOfferId().equals(gi.getOffer().getOfferId()))
                             .findFirst();
 
+            CartItem target;
             if (existing.isPresent()) {
-                existing.get().setQuantity(existing.get().getQuantity() + gi.getQuantity());
+                target = existing.get();
+                target.setQuantity(target.getQuantity() + gi.getQuantity());
             } else {
-                CartItem copy = new CartItem();
-                copy.setOffer(gi.getOffer());
-                copy.setQuantity(gi.getQuantity());
-                userCart.addItem(copy);
+                target = new CartItem();
+                target.setOffer(gi.getOffer());
+                target.setQuantity(gi.getQuantity());
+                userCart.addItem(target);
+            }
+            //the held stock follows the item, with the later deadline
+            if (gi.getHeldQuantity() > 0) {
+                target.setHeldQuantity(target.getHeldQuantity() + gi.getHeldQuantity());
+                if (target.getHoldExpiresAt() == null || gi.getHoldExpiresAt().isAfter(target.getHoldExpiresAt())) {
+                    target.setHoldExpiresAt(gi.getHoldExpiresAt());
+                }
             }
         }
 
         // persister puis supprimer l’ancien panier invité
         userCart = cartRepository.save(userCart);
         cartRepository.delete(guestCart);
+        cartRepository.flush();
+        userCart.getItems().forEach(stockHoldService::schedule);
         return userCart;
     }
 }
@@ -0,0 +1,119 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.model.Event;
+import com.ieolympicstickets.backend.model.Offer;
+import com.ieolympicstickets.backend.repository.projection.EventSummary;
+import com.ieolympicstickets.backend.util.KeysetPage;
+import com.ieolympicstickets.backend.util.TinyLfuCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache mémoire du catalogue public (épreuves et offres), lu à chaque page vue
+ * et modifié quelques fois par jour depuis l'admin.
+ * <p>
+ * Invalidé précisément par {@link CatalogChangedEvent} après commit. Les offres ont un TTL
+ * court : leur stock bouge à chaque achat sans passer par l'admin. Le stock affiché peut donc
+ * avoir quelques secondes de retard ; le checkout, lui, réserve toujours en base.
+ * Cache propre à chaque instance : une modification faite sur une autre instance est visible
+ * au plus tard après le TTL.
+ * <p>
+ * Les versions servent d'ETag aux endpoints publics : un If-None-Match est résolu sans base.
+ */
+@Component
+public class CatalogCache {
+
+    private static final String ALL = "all";
+    //distinguishes the versions of this instance from those of the others behind the load balancer
+    private static final String NODE = Long.toString(System.currentTimeMillis(), 36)
+            + Integer.toString(ThreadLocalRandom.current().nextInt(1 << 20), 36);
+
+    private final TinyLfuCache<String, List<Event>> eventLists;
+    private final TinyLfuCache<String, KeysetPage<EventSummary>> eventPages;
+    private final TinyLfuCache<Long, Optional<Event>> events;
+    private final TinyLfuCache<Long, List<Offer>> offersByEvent;
+    private final long offersTtlMillis;
+    //advances after each invalidation: the ETag of every catalog response
+    private final AtomicLong version = new AtomicLong();
+
+    public CatalogCache(MeterRegistry meterRegistry,
+                        @Value("${catalog.cache.max-events:10000}") int maxEvents,
+                        @Value("${catalog.cache.events-ttl-seconds:300}") long eventsTtl,
+                        @Value("${catalog.cache.offers-ttl-seconds:5}") long offersTtl) {
+        this.eventLists = new TinyLfuCache<>(2, Duration.ofSeconds(eventsTtl));
+        this.eventPages = new TinyLfuCache<>(1000, Duration.ofSeconds(eventsTtl));
+        this.events = new TinyLfuCache<>(maxEvents, Duration.ofSeconds(eventsTtl));
+        this.offersByEvent = new TinyLfuCache<>(maxEvents, Duration.ofSeconds(offersTtl));
+        this.offersTtlMillis = Duration.ofSeconds(Math.max(1, offersTtl)).toMillis();
+        bind(meterRegistry, "event_lists", eventLists);
+        bind(meterRegistry, "event_pages", eventPages);
+        bind(meterRegistry, "events", events);
+        bind(meterRegistry, "offers_by_event", offersByEvent);
+    }
+
+    public List<Event> allEvents(Supplier<List<Event>> loader) {
+        return eventLists.get(ALL, k -> List.copyOf(loader.get()));
+    }
+
+    /** @param key curseur et limite de la page */
+    public KeysetPage<EventSummary> eventPage(String key, Supplier<KeysetPage<EventSummary>> loader) {
+        return eventPages.get(key, k -> loader.get());
+    }
+
+    public Optional<Event> event(Long id, Supplier<Optional<Event>> loader) {
+        return events.get(id, k -> loader.get());
+    }
+
+    public List<Offer> offersByEvent(Long eventId, Supplier<List<Offer>> loader) {
+        return offersByEvent.get(eventId, k -> List.copyOf(loader.get()));
+    }
+
+    /** Version des épreuves : ne change qu'avec une écriture admin */
+    public String eventsVersion() {
+        return NODE + "-" + version.get();
+    }
+
+    /**
+     * Version des offres : écritures admin, et au moins toutes les offers-ttl secondes
+     * pour suivre le stock (même retard que le cache des offres).
+     */
+    public String offersVersion() {
+        return eventsVersion() + "-" + System.currentTimeMillis() / offersTtlMillis;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent change) {
+        eventLists.invalidateAll();
+        eventPages.invalidateAll();
+        for (Long eventId : change.eventIds()) {
+            events.invalidate(eventId);
+            offersByEvent.invalidate(eventId);
+        }
+        //only after the invalidation: a new ETag must never be served with the old data;
+        //loads still running from before it are not cached (TinyLfuCache generation check)
+        version.incrementAndGet();
+    }
+
+    //catalog.cache.requests{cache,result}, catalog.cache.evictions{cache}, catalog.cache.size{cache}
+    private static void bind(MeterRegistry registry, String name, TinyLfuCache<?, ?> cache) {
+        FunctionCounter.builder("catalog.cache.requests", cache, TinyLfuCache::hitCount)
+                .tags("cache", name, "result", "hit").register(registry);
+        FunctionCounter.builder("catalog.cache.requests", cache, TinyLfuCache::missCount)
+                .tags("cache", name, "result", "miss").register(registry);
+        FunctionCounter.builder("catalog.cache.evictions", cache, TinyLfuCache::evictionCount)
+                .tags("cache", name).register(registry);
+        Gauge.builder("catalog.cache.size", cache, TinyLfuCache::size)
+                .tags("cache", name).register(registry);
+    }
+}
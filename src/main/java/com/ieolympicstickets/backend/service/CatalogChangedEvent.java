@@ -0,0 +1,9 @@
+package com.ieolympicstickets.backend.service;
+
+import java.util.Set;
+
+/**
+ * Publié après une modification du catalogue (événement ou offre).
+ * @param eventIds événements dont la fiche ou les offres ont changé
+ */
+public record CatalogChangedEvent(Set<Long> eventIds) {}
@@ -0,0 +1,176 @@
+package com.ieolympicstickets.backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ieolympicstickets.backend.model.Event;
+import com.ieolympicstickets.backend.model.Offer;
+import com.ieolympicstickets.backend.repository.EventRepository;
+import com.ieolympicstickets.backend.repository.OfferRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Catalogue public complet (épreuves et leurs offres) sérialisé une fois par version,
+ * en JSON brut et en gzip : les requêtes renvoient ces octets tels quels, sans Jackson.
+ * <p>
+ * Reconstruit en arrière-plan après une écriture admin et toutes les refresh-ms pour suivre
+ * le stock ; les demandes arrivées pendant une reconstruction n'en déclenchent qu'une seule.
+ * Le snapshot est remplacé d'un bloc : un lecteur voit l'ancien ou le nouveau, jamais un mélange.
+ * L'ETag est un hash du contenu, identique sur toutes les instances.
+ */
+@Service
+public class CatalogSnapshotService {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogSnapshotService.class);
+
+    private final EventRepository eventRepository;
+    private final OfferRepository offerRepository;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "catalog-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+    //a rebuild is queued and has not started yet
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+    private volatile Snapshot current;
+
+    public CatalogSnapshotService(EventRepository eventRepository, OfferRepository offerRepository,
+                                  ObjectMapper objectMapper) {
+        this.eventRepository = eventRepository;
+        this.offerRepository = offerRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    @PreDestroy
+    public void stop() {
+        builder.shutdownNow();
+    }
+
+    /** Snapshot courant ; construit sur place au premier appel s'il n'existe pas encore */
+    public Snapshot current() {
+        Snapshot snapshot = current;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (this) {
+            if (current == null) {
+                current = build();
+            }
+            return current;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        requestRebuild();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent change) {
+        requestRebuild();
+    }
+
+    //stock changes with every purchase, without any CatalogChangedEvent
+    @Scheduled(fixedDelayString = "${catalog.snapshot.refresh-ms:5000}",
+            initialDelayString = "${catalog.snapshot.refresh-ms:5000}")
+    public void refresh() {
+        requestRebuild();
+    }
+
+    private void requestRebuild() {
+        if (!rebuildPending.compareAndSet(false, true)) {
+            return;
+        }
+        builder.execute(() -> {
+            rebuildPending.set(false);
+            try {
+                Snapshot snapshot = build();
+                Snapshot previous = current;
+                if (previous == null || !previous.etag().equals(snapshot.etag())) {
+                    current = snapshot;
+                    log.debug("Catalog snapshot rebuilt: {} bytes, {} gzipped",
+                            snapshot.json().length, snapshot.gzip().length);
+                }
+            } catch (RuntimeException e) {
+                //keep serving the previous snapshot, retried at the next refresh
+                log.warn("Catalog snapshot rebuild failed", e);
+            }
+        });
+    }
+
+    // {"events":[{...event, "offers":[{...offer without event}]}]}
+    private Snapshot build() {
+        Map<Long, ArrayNode> offersByEvent = new LinkedHashMap<>();
+        for (Offer offer : offerRepository.findAllWithEvent()) {
+            ObjectNode node = objectMapper.valueToTree(offer);
+            node.remove("event");
+            offersByEvent.computeIfAbsent(offer.getEvent().getId(), id -> objectMapper.createArrayNode()).add(node);
+        }
+        ObjectNode root = objectMapper.createObjectNode();
+        ArrayNode events = root.putArray("events");
+        List<Event> all = eventRepository.findAllOrdered();
+        for (Event event : all) {
+            ObjectNode node = objectMapper.valueToTree(event);
+            ArrayNode offers = offersByEvent.get(event.getId());
+            node.set("offers", offers != null ? offers : objectMapper.createArrayNode());
+            events.add(node);
+        }
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(root);
+            String hash = hash(json);
+            //one strong ETag per representation: the gzip bytes differ from the JSON ones
+            return new Snapshot("\"c" + hash + "\"", "\"c" + hash + "-gzip\"", json, gzip(json));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String hash(byte[] json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            return HexFormat.of().formatHex(digest, 0, 12);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Les tableaux ne sont jamais modifiés après construction : à écrire tels quels dans la réponse.
+     * @param etag     ETag HTTP du JSON, guillemets compris
+     * @param gzipEtag ETag HTTP de la variante gzip
+     */
+    public record Snapshot(String etag, String gzipEtag, byte[] json, byte[] gzip) {}
+}
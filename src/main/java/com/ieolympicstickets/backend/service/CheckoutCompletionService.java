@@ -0,0 +1,71 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.model.Cart;
+import com.ieolympicstickets.backend.model.Order;
+import com.ieolympicstickets.backend.model.OrderStatus;
+import com.ieolympicstickets.backend.repository.CartItemRepository;
+import com.ieolympicstickets.backend.repository.CartRepository;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Phase 3 du checkout, commune au checkout et à sa reprise : billets de la commande payée,
+ * panier vidé et stock bloqué par les articles ajoutés pendant le paiement rendu.
+ * S'exécute dans la transaction de l'appelant.
+ */
+@Service
+public class CheckoutCompletionService {
+
+    private final OrderService orderService;
+    private final TicketIssuanceService ticketIssuanceService;
+    private final CartRepository cartRepository;
+    private final CartItemRepository cartItemRepository;
+    private final StockHoldService stockHoldService;
+
+    public CheckoutCompletionService(OrderService orderService,
+                                     TicketIssuanceService ticketIssuanceService,
+                                     CartRepository cartRepository,
+                                     CartItemRepository cartItemRepository,
+                                     StockHoldService stockHoldService) {
+        this.orderService = orderService;
+        this.ticketIssuanceService = ticketIssuanceService;
+        this.cartRepository = cartRepository;
+        this.cartItemRepository = cartItemRepository;
+        this.stockHoldService = stockHoldService;
+    }
+
+    public record Completion(Order order, List<String> qrHashes) {}
+
+    /** Fin du checkout : le panier validé est connu */
+    public Completion complete(Long orderId, Long cartId) {
+        return complete(orderService.lockOrder(orderId), cartRepository.findById(cartId));
+    }
+
+    /**
+     * Reprise d'une commande restée PAID (crash entre paiement et finalisation) :
+     * le panier est celui de l'acheteur, le checkout exigeant un panier à son nom.
+     * @return empty si la commande n'est plus PAID (finalisée entre-temps)
+     */
+    public Optional<Completion> completePaid(Long orderId) {
+        Order order = orderService.lockOrder(orderId);
+        if (order.getStatus() != OrderStatus.PAID) {
+            return Optional.empty();
+        }
+        return Optional.of(complete(order, cartRepository.findByUser(order.getUser())));
+    }
+
+    private Completion complete(Order order, Optional<Cart> cart) {
+        List<String> qrHashes = order.getStatus() == OrderStatus.PAID
+                ? ticketIssuanceService.issuePaid(order)
+                : List.of();
+        //empty cart after purchase; items added during the payment give their hold back
+        cart.ifPresent(c -> {
+            cartItemRepository.findByCartForUpdate(c).forEach(stockHoldService::releaseHold);
+            c.getItems().clear();
+            cartRepository.save(c);
+        });
+        return new Completion(order, qrHashes);
+    }
+}
@@ -0,0 +1,75 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.controller.CartController.ValidateCartResponse;
+import com.ieolympicstickets.backend.model.User;
+import com.ieolympicstickets.backend.util.IdempotencyStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Header Idempotency-Key sur la validation du panier.
+ * Un client qui relance sa requête (timeout mobile) reçoit la réponse du premier essai :
+ * pas de second paiement ni de seconde commande.
+ */
+@Service
+public class CheckoutIdempotencyService {
+
+    private final IdempotencyStore<ValidateCartResponse> store;
+    private final Duration wait;
+
+    public CheckoutIdempotencyService(
+            @Value("${checkout.idempotency.ttl-seconds:86400}") long ttlSeconds,
+            @Value("${checkout.idempotency.max-entries:100000}") int maxEntries,
+            @Value("${checkout.idempotency.wait-seconds:30}") long waitSeconds) {
+        this.store = new IdempotencyStore<>(Duration.ofSeconds(ttlSeconds), maxEntries);
+        this.wait = Duration.ofSeconds(waitSeconds);
+    }
+
+    /**
+     * Exécute la validation une seule fois par (utilisateur, clé).
+     * Sans clé, la validation est exécutée normalement.
+     * @throws ResponseStatusException 422 si la clé a servi pour un autre panier,
+     *                                 409 si le premier essai est toujours en cours
+     */
+    public ValidateCartResponse validateOnce(String idempotencyKey, User user, Long cartId,
+                                             String paymentToken, Supplier<ValidateCartResponse> validation) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return validation.get();
+        }
+        //keys are per user: two clients may generate the same one
+        String key = user.getId() + ":" + idempotencyKey;
+        String fingerprint = cartId + ":" + tokenDigest(paymentToken);
+        try {
+            return store.execute(key, fingerprint, wait, validation);
+        } catch (IdempotencyStore.KeyReuseException ex) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                    "Idempotency-Key déjà utilisée pour une autre requête");
+        } catch (TimeoutException ex) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Une requête avec cette Idempotency-Key est toujours en cours");
+        }
+    }
+
+    //SHA-256 of the full token: no collision between two cards, and the raw token is not kept
+    static String tokenDigest(String paymentToken) {
+        if (paymentToken == null) {
+            return "-";
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(paymentToken.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
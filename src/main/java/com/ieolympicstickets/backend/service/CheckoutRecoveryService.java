@@ -0,0 +1,79 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.model.OrderStatus;
+import com.ieolympicstickets.backend.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * Reprise des checkouts interrompus entre deux phases (crash, redémarrage, erreur).
+ * <ul>
+ *     <li>PENDING_PAYMENT trop ancienne : le paiement n'a jamais été confirmé, la commande est
+ *     annulée et son stock rendu. Une commande dont le paiement a dépassé le délai reste
+ *     PENDING_PAYMENT jusqu'à la réponse tardive du prestataire ; le passage à PAID étant
+ *     conditionnel, un paiement qui aboutit après l'annulation est détecté et remboursé.</li>
+ *     <li>PAID : le paiement est acquis, la commande est finalisée comme par le checkout
+ *     (billets, panier vidé et blocages rendus).</li>
+ *     <li>remboursements en échec : retentés ({@link RefundService}).</li>
+ * </ul>
+ */
+@Service
+public class CheckoutRecoveryService {
+
+    private static final Logger log = LoggerFactory.getLogger(CheckoutRecoveryService.class);
+
+    private final OrderRepository orderRepository;
+    private final OrderService orderService;
+    private final CheckoutCompletionService checkoutCompletionService;
+    private final RefundService refundService;
+    private final TransactionTemplate transactionTemplate;
+    private final long paymentTimeoutSeconds;
+    private final long completionDelaySeconds;
+
+    public CheckoutRecoveryService(OrderRepository orderRepository,
+                                   OrderService orderService,
+                                   CheckoutCompletionService checkoutCompletionService,
+                                   RefundService refundService,
+                                   TransactionTemplate transactionTemplate,
+                                   @Value("${checkout.recovery.payment-timeout-seconds:300}") long paymentTimeoutSeconds,
+                                   @Value("${checkout.recovery.completion-delay-seconds:60}") long completionDelaySeconds) {
+        this.orderRepository = orderRepository;
+        this.orderService = orderService;
+        this.checkoutCompletionService = checkoutCompletionService;
+        this.refundService = refundService;
+        this.transactionTemplate = transactionTemplate;
+        this.paymentTimeoutSeconds = paymentTimeoutSeconds;
+        this.completionDelaySeconds = completionDelaySeconds;
+    }
+
+    @Scheduled(fixedDelayString = "${checkout.recovery.sweep-ms:30000}")
+    public void recover() {
+        LocalDateTime now = LocalDateTime.now();
+        for (Long orderId : orderRepository.findIdsByStatusCreatedBefore(
+                OrderStatus.PENDING_PAYMENT, now.minusSeconds(paymentTimeoutSeconds))) {
+            try {
+                if (orderService.cancelUnpaid(orderId)) {
+                    log.warn("Order {} never confirmed its payment, cancelled and stock released", orderId);
+                }
+            } catch (RuntimeException ex) {
+                log.error("Could not cancel unpaid order {}", orderId, ex);
+            }
+        }
+        for (Long orderId : orderRepository.findIdsByStatusCreatedBefore(
+                OrderStatus.PAID, now.minusSeconds(completionDelaySeconds))) {
+            try {
+                transactionTemplate.executeWithoutResult(s -> checkoutCompletionService.completePaid(orderId)
+                        .ifPresent(done -> log.warn("Paid order {} completed by recovery", orderId)));
+            } catch (RuntimeException ex) {
+                log.error("Could not complete paid order {}", orderId, ex);
+            }
+        }
+        refundService.retryPending();
+    }
+}
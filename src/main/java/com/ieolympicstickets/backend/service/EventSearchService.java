@@ -0,0 +1,117 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.model.Event;
+import com.ieolympicstickets.backend.repository.EventRepository;
+import com.ieolympicstickets.backend.util.InvertedIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Recherche d'épreuves en mémoire : texte (titre, lieu, description) et facettes lieu, dates, mise en avant.
+ * <p>
+ * L'index est construit au démarrage puis mis à jour épreuve par épreuve à chaque CatalogChangedEvent ;
+ * une recherche ne touche pas la base. Index propre à chaque instance.
+ */
+@Service
+public class EventSearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(EventSearchService.class);
+    private static final Comparator<Event> BY_DATE =
+            Comparator.comparing(Event::getEventDateTime).thenComparing(Event::getId);
+
+    private final EventRepository eventRepository;
+    private final InvertedIndex index = new InvertedIndex();
+    private final Map<Long, Event> events = new ConcurrentHashMap<>();
+
+    public EventSearchService(EventRepository eventRepository) {
+        this.eventRepository = eventRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        List<Event> all = eventRepository.findAll();
+        index.clear();
+        events.clear();
+        all.forEach(this::put);
+        log.info("Event search index built: {} events", all.size());
+    }
+
+    //offer changes are published too: reloading a few events is cheap
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent change) {
+        Set<Long> missing = new HashSet<>(change.eventIds());
+        for (Event event : eventRepository.findAllById(change.eventIds())) {
+            put(event);
+            missing.remove(event.getId());
+        }
+        for (Long deleted : missing) {
+            index.remove(deleted);
+            events.remove(deleted);
+        }
+    }
+
+    /**
+     * @param query    mots recherchés, chacun pouvant être un début de mot ; null ou vide = toutes les épreuves
+     * @param location lieu exact, sans tenir compte des majuscules ni des accents
+     * @param from     épreuves à partir de cette date (incluse)
+     * @param to       épreuves avant cette date (exclue)
+     * @param featured filtre sur la mise en avant
+     * @param limit    nombre maximum d'épreuves renvoyées ; total et facettes portent sur tous les résultats
+     */
+    public SearchResult search(String query, String location, LocalDateTime from, LocalDateTime to,
+                               Boolean featured, int limit) {
+        Collection<Long> ids = query == null || query.isBlank() ? events.keySet() : index.search(query);
+        String wantedLocation = location == null || location.isBlank() ? null : InvertedIndex.normalize(location.trim());
+        List<Event> hits = new ArrayList<>();
+        Map<String, Long> locations = new TreeMap<>();
+        long featuredCount = 0;
+        for (Long id : ids) {
+            Event event = events.get(id);
+            if (event == null
+                    || (from != null && event.getEventDateTime().isBefore(from))
+                    || (to != null && !event.getEventDateTime().isBefore(to))
+                    || (featured != null && event.isFeatured() != featured)) {
+                continue;
+            }
+            //location facet counted before the location filter: the other locations stay selectable
+            locations.merge(event.getLocation(), 1L, Long::sum);
+            if (wantedLocation != null && !InvertedIndex.normalize(event.getLocation()).equals(wantedLocation)) {
+                continue;
+            }
+            hits.add(event);
+            if (event.isFeatured()) {
+                featuredCount++;
+            }
+        }
+        hits.sort(BY_DATE);
+        List<Event> page = hits.size() > limit ? List.copyOf(hits.subList(0, limit)) : hits;
+        return new SearchResult(hits.size(), page, locations, featuredCount);
+    }
+
+    private void put(Event event) {
+        index.put(event.getId(), event.getTitle(), event.getLocation(), event.getDescription());
+        events.put(event.getId(), event);
+    }
+
+    /**
+     * @param total     nombre d'épreuves correspondantes (avant limit)
+     * @param locations nombre de résultats par lieu, sans le filtre de lieu
+     * @param featured  nombre de résultats mis en avant
+     */
+    public record SearchResult(long total, List<Event> events, Map<String, Long> locations, long featured) {}
+}
@@ -2,29 +2,66 @@ package com.ieolympicstickets.backend.service;
 
 import com.ieolympicstickets.backend.model.Event;
 import com.ieolympicstickets.backend.repository.EventRepository;
+import com.ieolympicstickets.backend.repository.projection.EventSummary;
+import com.ieolympicstickets.backend.util.KeysetPage;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class EventService {
 
     private final EventRepository eventRepository;
+    private final WaitingRoomService waitingRoomService;
+    private final CatalogCache catalogCache;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public EventService (EventRepository eventRepository) {
+    public EventService (EventRepository eventRepository, WaitingRoomService waitingRoomService,
+                         CatalogCache catalogCache, ApplicationEventPublisher eventPublisher) {
         this.eventRepository=eventRepository;
+        this.waitingRoomService = waitingRoomService;
+        this.catalogCache = catalogCache;
+        this.eventPublisher = eventPublisher;
     }
+    //read through the catalog cache, invalidated on every save/delete below
     public List<Event>findAllEvents() {
-        return eventRepository.findAll();
+        return catalogCache.allEvents(eventRepository::findAll);
+    }
+    /** Épreuves complètes par date puis id, à partir du curseur (null = première page) */
+    public KeysetPage<Event> findEventsPage(KeysetPage.Cursor after, int limit) {
+        PageRequest rows = PageRequest.of(0, limit + 1);
+        List<Event> events = after == null
+                ? eventRepository.findFirstPage(rows)
+                : eventRepository.findPageAfter(after.at(), after.id(), rows);
+        return KeysetPage.of(events, limit, e -> new KeysetPage.Cursor(e.getEventDateTime(), e.getId()));
+    }
+    /** Même pagination, colonnes de liste seulement ; lu à travers le cache du catalogue */
+    public KeysetPage<EventSummary> findEventSummariesPage(KeysetPage.Cursor after, int limit) {
+        String key = (after == null ? "" : after.encode()) + ":" + limit;
+        return catalogCache.eventPage(key, () -> {
+            PageRequest rows = PageRequest.of(0, limit + 1);
+            List<EventSummary> events = after == null
+                    ? eventRepository.findSummaryFirstPage(rows)
+                    : eventRepository.findSummaryPageAfter(after.at(), after.id(), rows);
+            return KeysetPage.of(events, limit, e -> new KeysetPage.Cursor(e.eventDateTime(), e.id()));
+        });
     }
     public Optional<Event> findEventById(Long id) {
-        return eventRepository.findById(id);
+        return catalogCache.event(id, () -> eventRepository.findById(id));
     }
     public Event saveEvent(Event event) {
-        return eventRepository.save(event);
+        Event saved = eventRepository.save(event);
+        waitingRoomService.onEventSaved(saved);
+        eventPublisher.publishEvent(new CatalogChangedEvent(Set.of(saved.getId())));
+        return saved;
     }
     public void deleteEvent(Long id) {
         eventRepository.deleteById(id);
+        waitingRoomService.onEventDeleted(id);
+        eventPublisher.publishEvent(new CatalogChangedEvent(Set.of(id)));
     }
 }
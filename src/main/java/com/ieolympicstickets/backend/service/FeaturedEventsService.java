@@ -0,0 +1,128 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.model.Event;
+import com.ieolympicstickets.backend.repository.EventRepository;
+import com.ieolympicstickets.backend.repository.OfferRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Épreuves mises en avant (page d'accueil), classées à l'avance et servies depuis la mémoire.
+ * <p>
+ * Classement : épreuves avec du stock d'abord, puis la plus proche, puis le plus de places restantes.
+ * Les épreuves passées sortent du flux. Mis à jour épreuve par épreuve à chaque CatalogChangedEvent,
+ * et le stock de toutes les épreuves du flux est relu toutes les refresh-ms (une requête).
+ */
+@Service
+public class FeaturedEventsService {
+
+    private static final Comparator<FeaturedEvent> RANKING = Comparator
+            .comparing(FeaturedEvent::soldOut)
+            .thenComparing(f -> f.event().getEventDateTime())
+            .thenComparing(FeaturedEvent::remainingStock, Comparator.reverseOrder())
+            .thenComparing(f -> f.event().getId());
+
+    private final EventRepository eventRepository;
+    private final OfferRepository offerRepository;
+    private final HotStockLedger hotStockLedger;
+    private final int maxSize;
+    //featured upcoming events and their remaining stock; writes are synchronized
+    private final Map<Long, Event> events = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> stock = new ConcurrentHashMap<>();
+    private volatile List<FeaturedEvent> feed = List.of();
+
+    public FeaturedEventsService(EventRepository eventRepository,
+                                 OfferRepository offerRepository,
+                                 HotStockLedger hotStockLedger,
+                                 @Value("${catalog.featured.max-size:20}") int maxSize) {
+        this.eventRepository = eventRepository;
+        this.offerRepository = offerRepository;
+        this.hotStockLedger = hotStockLedger;
+        this.maxSize = maxSize;
+    }
+
+    /** Flux classé, déjà calculé */
+    public List<FeaturedEvent> feed() {
+        return feed;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        events.clear();
+        stock.clear();
+        eventRepository.findByFeaturedTrueAndEventDateTimeAfter(LocalDateTime.now())
+                .forEach(e -> events.put(e.getId(), e));
+        stock.putAll(remainingStock(events.keySet()));
+        rank();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onCatalogChanged(CatalogChangedEvent change) {
+        LocalDateTime now = LocalDateTime.now();
+        change.eventIds().forEach(events::remove);
+        for (Event event : eventRepository.findAllById(change.eventIds())) {
+            if (event.isFeatured() && event.getEventDateTime().isAfter(now)) {
+                events.put(event.getId(), event);
+            }
+        }
+        stock.keySet().retainAll(events.keySet());
+        stock.putAll(remainingStock(change.eventIds().stream().filter(events::containsKey).toList()));
+        rank();
+    }
+
+    //stock moves with every purchase, without any CatalogChangedEvent
+    @Scheduled(fixedDelayString = "${catalog.featured.refresh-ms:5000}",
+            initialDelayString = "${catalog.featured.refresh-ms:5000}")
+    public synchronized void refreshStock() {
+        LocalDateTime now = LocalDateTime.now();
+        boolean expired = events.values().removeIf(e -> !e.getEventDateTime().isAfter(now));
+        stock.keySet().retainAll(events.keySet());
+        Map<Long, Integer> current = remainingStock(events.keySet());
+        if (expired || !current.equals(stock)) {
+            stock.clear();
+            stock.putAll(current);
+            rank();
+        }
+    }
+
+    //lock held
+    private void rank() {
+        List<FeaturedEvent> ranked = new ArrayList<>(events.size());
+        for (Event event : events.values()) {
+            int remaining = stock.getOrDefault(event.getId(), 0);
+            ranked.add(new FeaturedEvent(event, remaining, remaining <= 0));
+        }
+        ranked.sort(RANKING);
+        feed = List.copyOf(ranked.subList(0, Math.min(maxSize, ranked.size())));
+    }
+
+    //sum of the offers' stock per event; events without offers are absent
+    private Map<Long, Integer> remainingStock(Collection<Long> eventIds) {
+        Map<Long, Integer> remaining = new HashMap<>();
+        if (eventIds.isEmpty()) {
+            return remaining;
+        }
+        for (Object[] row : offerRepository.findStockByEventIdIn(eventIds)) {
+            Long offerId = (Long) row[1];
+            int available = hotStockLedger.isTracked(offerId)
+                    ? Math.max(0, hotStockLedger.available(offerId)) : (Integer) row[2];
+            remaining.merge((Long) row[0], available, Integer::sum);
+        }
+        return remaining;
+    }
+
+    public record FeaturedEvent(Event event, int remainingStock, boolean soldOut) {}
+}
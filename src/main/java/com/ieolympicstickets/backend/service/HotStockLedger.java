@@ -0,0 +1,300 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.model.Offer;
+import com.ieolympicstickets.backend.model.OrderStatus;
+import com.ieolympicstickets.backend.repository.CartItemRepository;
+import com.ieolympicstickets.backend.repository.OfferRepository;
+import com.ieolympicstickets.backend.repository.OrderLineRepository;
+import com.ieolympicstickets.backend.repository.TicketRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Stock en mémoire des offres "hot" (flash-sale).
+ * <p>
+ * Le stock restant d'une offre est découpé en stripes, chacune modifiée par CAS :
+ * les checkouts concurrents ne se battent plus sur la même ligne {@code offer}.
+ * Les décréments confirmés sont reportés en base par lots ({@link #flush()}).
+ * <p>
+ * Cycle d'une réservation : {@link #tryReserve} puis {@link #confirm} au commit
+ * (ou {@link #cancel} au rollback) ; {@link #release} rend une réservation déjà confirmée.
+ * <p>
+ * Mono-instance uniquement : chaque JVM a sa propre copie du stock, N instances vendraient
+ * chacune tout le stock restant. Sans {@code inventory.hot.single-node=true}, aucune offre
+ * n'est suivie et les offres hot passent par l'UPDATE conditionnel en base, comme les autres.
+ */
+@Component
+public class HotStockLedger {
+
+    private static final Logger log = LoggerFactory.getLogger(HotStockLedger.class);
+    //16 ints = 64 bytes: one stripe per cache line, no false sharing between stripes
+    private static final int PADDING = 16;
+    //orders that took stock but have no tickets yet (tickets are created all at once, with ISSUED)
+    private static final Set<OrderStatus> NOT_ISSUED =
+            EnumSet.of(OrderStatus.PENDING_PAYMENT, OrderStatus.PAID, OrderStatus.PENDING_ISSUANCE);
+
+    private static final String FLUSH_SQL =
+            "UPDATE offer SET stock = stock - ?, ledger_consumed = ledger_consumed + ? WHERE offer_id = ?";
+
+    private final OfferRepository offerRepository;
+    private final TicketRepository ticketRepository;
+    private final CartItemRepository cartItemRepository;
+    private final OrderLineRepository orderLineRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int stripes;
+    private final boolean singleNode;
+
+    private final ConcurrentHashMap<Long, HotStock> offers = new ConcurrentHashMap<>();
+
+    public HotStockLedger(OfferRepository offerRepository,
+                          TicketRepository ticketRepository,
+                          CartItemRepository cartItemRepository,
+                          OrderLineRepository orderLineRepository,
+                          JdbcTemplate jdbcTemplate,
+                          TransactionTemplate transactionTemplate,
+                          @Value("${inventory.hot.stripes:16}") int stripes,
+                          @Value("${inventory.hot.single-node:false}") boolean singleNode) {
+        this.offerRepository = offerRepository;
+        this.ticketRepository = ticketRepository;
+        this.cartItemRepository = cartItemRepository;
+        this.orderLineRepository = orderLineRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        //power of two so the stripe index is a mask
+        this.stripes = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.singleNode = singleNode;
+    }
+
+    public boolean isTracked(Long offerId) {
+        return offers.containsKey(offerId);
+    }
+
+    /** Stock restant en mémoire, -1 si l'offre n'est pas suivie */
+    public int available(Long offerId) {
+        HotStock hs = offers.get(offerId);
+        return hs == null ? -1 : hs.available();
+    }
+
+    /** Réserve en mémoire, sans toucher la base */
+    public boolean tryReserve(Long offerId, int qty) {
+        HotStock hs = offers.get(offerId);
+        return hs != null && hs.take(qty);
+    }
+
+    /** Réservation validée (commit) : le décrément partira au prochain flush */
+    public void confirm(Long offerId, int qty) {
+        HotStock hs = offers.get(offerId);
+        if (hs != null) {
+            hs.pending.addAndGet(qty);
+        } else {
+            //offer left hot mode meanwhile: the database is the reference again
+            jdbcTemplate.update(FLUSH_SQL, qty, qty, offerId);
+        }
+    }
+
+    /** Réservation abandonnée avant commit : rien n'a été reporté en base */
+    public void cancel(Long offerId, int qty) {
+        HotStock hs = offers.get(offerId);
+        if (hs != null) {
+            hs.give(qty);
+        }
+    }
+
+    /** Rend une réservation confirmée (paiement refusé, annulation) */
+    public void release(Long offerId, int qty) {
+        HotStock hs = offers.get(offerId);
+        if (hs != null) {
+            hs.give(qty);
+            hs.pending.addAndGet(-qty);
+        } else {
+            jdbcTemplate.update(FLUSH_SQL, -qty, -qty, offerId);
+        }
+    }
+
+    /**
+     * Appelé après l'enregistrement d'une offre par un admin.
+     * Le stock saisi fait foi : le ledger repart de cette valeur.
+     */
+    public void onOfferSaved(Offer offer) {
+        if (offer.isHot() && singleNode) {
+            transactionTemplate.executeWithoutResult(s -> {
+                Integer stock = offerRepository.findStockByOfferId(offer.getOfferId());
+                int remaining = stock == null ? 0 : stock;
+                offerRepository.resetLedger(offer.getOfferId(), remaining, consumedUnits(offer.getOfferId()));
+                load(offer.getOfferId(), remaining);
+            });
+        } else {
+            untrack(offer.getOfferId());
+        }
+    }
+
+    /** L'offre quitte le mode hot : on reporte ce qui reste puis la base redevient la référence */
+    public void untrack(Long offerId) {
+        HotStock hs = offers.remove(offerId);
+        if (hs != null) {
+            int d = hs.pending.getAndSet(0);
+            if (d != 0) {
+                jdbcTemplate.update(FLUSH_SQL, d, d, offerId);
+            }
+        }
+    }
+
+    /**
+     * Reconstruit le ledger au démarrage.
+     * Les ventes confirmées mais pas encore reportées sont retrouvées par différence entre
+     * les unités consommées (billets, commandes pas encore émises et paniers bloqués) et ledger_consumed.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        List<Offer> hotOffers = offerRepository.findByHotTrue();
+        if (!singleNode) {
+            if (!hotOffers.isEmpty()) {
+                log.warn("{} hot offers served from the database: in-memory stock needs inventory.hot.single-node=true",
+                        hotOffers.size());
+            }
+            return;
+        }
+        //sold out until rebuilt, so no checkout slips through the database path meanwhile
+        hotOffers.forEach(o -> offers.put(o.getOfferId(), new HotStock(stripes)));
+        for (Offer offer : hotOffers) {
+            Long offerId = offer.getOfferId();
+            transactionTemplate.executeWithoutResult(s -> {
+                long consumed = consumedUnits(offerId);
+                Integer flushed = offerRepository.findLedgerConsumedByOfferId(offerId);
+                Integer stock = offerRepository.findStockByOfferId(offerId);
+                long unflushed = consumed - (flushed == null ? 0 : flushed);
+                int remaining = (int) Math.max(0, (stock == null ? 0 : stock) - unflushed);
+                offerRepository.resetLedger(offerId, remaining, consumed);
+                load(offerId, remaining);
+                log.info("Hot offer {} rebuilt: {} left ({} unflushed units recovered)", offerId, remaining, unflushed);
+            });
+        }
+    }
+
+    /** Reporte en base, en un seul batch JDBC, les décréments confirmés depuis le dernier flush */
+    @Scheduled(fixedDelayString = "${inventory.hot.flush-ms:200}")
+    public void flush() {
+        List<Object[]> batch = new ArrayList<>();
+        offers.forEach((offerId, hs) -> {
+            int d = hs.pending.getAndSet(0);
+            if (d != 0) {
+                batch.add(new Object[]{d, d, offerId});
+            }
+        });
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(s -> jdbcTemplate.batchUpdate(FLUSH_SQL, batch));
+        } catch (DataAccessException ex) {
+            //keep the deltas for the next round
+            for (Object[] row : batch) {
+                HotStock hs = offers.get((Long) row[2]);
+                if (hs != null) {
+                    hs.pending.addAndGet((Integer) row[0]);
+                }
+            }
+            log.warn("Hot stock flush failed, {} offers retried later", batch.size(), ex);
+        }
+    }
+
+    //units already taken from the offer's stock: issued tickets, orders not issued yet and cart holds
+    private long consumedUnits(Long offerId) {
+        return ticketRepository.countByOfferOfferId(offerId)
+                + orderLineRepository.sumQuantityByOfferIdAndOrderStatusIn(offerId, NOT_ISSUED)
+                + cartItemRepository.sumHeldQuantityByOfferId(offerId);
+    }
+
+    private void load(Long offerId, int remaining) {
+        HotStock hs = new HotStock(stripes);
+        for (int i = 0; i < stripes; i++) {
+            //spread evenly, the first stripes get the remainder
+            hs.slots.set(i * PADDING, remaining / stripes + (i < remaining % stripes ? 1 : 0));
+        }
+        offers.put(offerId, hs);
+    }
+
+    private static final class HotStock {
+        final AtomicIntegerArray slots;
+        final int mask;
+        //confirmed decrements not yet written to the offer table
+        final AtomicInteger pending = new AtomicInteger();
+
+        HotStock(int stripes) {
+            this.slots = new AtomicIntegerArray(stripes * PADDING);
+            this.mask = stripes - 1;
+        }
+
+        int available() {
+            int sum = 0;
+            for (int i = 0; i <= mask; i++) {
+                sum += slots.get(i * PADDING);
+            }
+            return sum;
+        }
+
+        boolean take(int qty) {
+            int home = home();
+            //usual case: one stripe has enough
+            for (int i = 0; i <= mask; i++) {
+                int idx = ((home + i) & mask) * PADDING;
+                for (int v = slots.get(idx); v >= qty; v = slots.get(idx)) {
+                    if (slots.compareAndSet(idx, v, v - qty)) {
+                        return true;
+                    }
+                }
+            }
+            //near sell-out: gather from several stripes, give everything back if still short
+            int[] taken = new int[mask + 1];
+            int total = 0;
+            for (int i = 0; i <= mask && total < qty; i++) {
+                int s = (home + i) & mask;
+                int idx = s * PADDING;
+                for (int v = slots.get(idx); v > 0; v = slots.get(idx)) {
+                    int t = Math.min(v, qty - total);
+                    if (slots.compareAndSet(idx, v, v - t)) {
+                        taken[s] += t;
+                        total += t;
+                        break;
+                    }
+                }
+            }
+            if (total == qty) {
+                return true;
+            }
+            for (int s = 0; s <= mask; s++) {
+                if (taken[s] > 0) {
+                    slots.addAndGet(s * PADDING, taken[s]);
+                }
+            }
+            return false;
+        }
+
+        void give(int qty) {
+            slots.addAndGet(home() * PADDING, qty);
+        }
+
+        //threads keep hitting the same stripe
+        private int home() {
+            long id = Thread.currentThread().getId();
+            return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+    }
+}
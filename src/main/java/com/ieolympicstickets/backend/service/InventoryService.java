@@ -0,0 +1,149 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.repository.OfferRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Réservation du stock des offres.
+ * Chaque offre est décrémentée par un seul UPDATE conditionnel (stock >= qty) :
+ * pas de lecture préalable ni de verrou applicatif, la base arbitre les checkouts concurrents.
+ * Les offres "hot" sont servies par le {@link HotStockLedger}, sans aller en base.
+ */
+@Service
+public class InventoryService {
+
+    private final OfferRepository offerRepository;
+    private final HotStockLedger hotStockLedger;
+
+    public InventoryService(OfferRepository offerRepository, HotStockLedger hotStockLedger) {
+        this.offerRepository = offerRepository;
+        this.hotStockLedger = hotStockLedger;
+    }
+
+    /**
+     * Réserve toutes les quantités demandées, ou aucune.
+     * Les offres sont traitées par id croissant : deux paniers concurrents verrouillent
+     * les lignes dans le même ordre, donc pas de deadlock entre eux.
+     * @param quantities offerId -> quantité demandée
+     * @return la réservation ; en cas d'échec, le stock disponible de chaque offre en rupture
+     */
+    @Transactional
+    public StockReservation reserve(Map<Long, Integer> quantities) {
+        Map<Long, Integer> reserved = new LinkedHashMap<>();
+        Map<Long, Integer> hot = new LinkedHashMap<>();
+        Map<Long, Integer> shortages = new LinkedHashMap<>();
+        for (Map.Entry<Long, Integer> e : new TreeMap<>(quantities).entrySet()) {
+            Long offerId = e.getKey();
+            int qty = e.getValue();
+            if (qty <= 0) {
+                continue;
+            }
+            if (hotStockLedger.isTracked(offerId)) {
+                if (hotStockLedger.tryReserve(offerId, qty)) {
+                    hot.put(offerId, qty);
+                } else {
+                    shortages.put(offerId, Math.max(0, hotStockLedger.available(offerId)));
+                }
+            } else if (offerRepository.reserveStock(offerId, qty) == 1) {
+                reserved.put(offerId, qty);
+            } else {
+                Integer available = offerRepository.findStockByOfferId(offerId);
+                shortages.put(offerId, available == null ? 0 : available);
+            }
+        }
+        if (!shortages.isEmpty()) {
+            //all or nothing: give back what was already taken
+            reserved.forEach(offerRepository::releaseStock);
+            hot.forEach(hotStockLedger::cancel);
+            return new StockReservation(Map.of(), Map.of(), shortages);
+        }
+        StockReservation reservation = new StockReservation(reserved, hot, shortages);
+        if (!hot.isEmpty()) {
+            confirmOnCommit(reservation);
+        }
+        return reservation;
+    }
+
+    /**
+     * Remet en stock une réservation (paiement refusé, commande annulée).
+     * Sans effet si elle a déjà été libérée.
+     */
+    @Transactional
+    public void release(StockReservation reservation) {
+        if (!reservation.isSuccessful()) {
+            return;
+        }
+        Boolean wasConfirmed = reservation.markReleased();
+        if (wasConfirmed == null) {
+            return;
+        }
+        reservation.getDatabaseQuantities().forEach(offerRepository::releaseStock);
+        if (wasConfirmed) {
+            reservation.getHotQuantities().forEach(hotStockLedger::release);
+        } else {
+            reservation.getHotQuantities().forEach(hotStockLedger::cancel);
+        }
+    }
+
+    /**
+     * Remet en stock des unités réservées par une transaction déjà validée
+     * (blocage panier expiré ou retiré). Pour les offres hot, le ledger est
+     * mis à jour seulement si la transaction courante est validée.
+     */
+    @Transactional
+    public void releaseUnits(Map<Long, Integer> quantities) {
+        Map<Long, Integer> hot = new LinkedHashMap<>();
+        quantities.forEach((offerId, qty) -> {
+            if (qty <= 0) {
+                return;
+            }
+            if (hotStockLedger.isTracked(offerId)) {
+                hot.put(offerId, qty);
+            } else {
+                offerRepository.releaseStock(offerId, qty);
+            }
+        });
+        if (hot.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            hot.forEach(hotStockLedger::release);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                hot.forEach(hotStockLedger::release);
+            }
+        });
+    }
+
+    //the ledger only reports to the database what the checkout transaction actually committed
+    private void confirmOnCommit(StockReservation reservation) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            if (reservation.markConfirmed()) {
+                reservation.getHotQuantities().forEach(hotStockLedger::confirm);
+            }
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    if (reservation.markConfirmed()) {
+                        reservation.getHotQuantities().forEach(hotStockLedger::confirm);
+                    }
+                } else if (reservation.markReleased() != null) {
+                    reservation.getHotQuantities().forEach(hotStockLedger::cancel);
+                }
+            }
+        });
+    }
+}
@@ -2,30 +2,114 @@ package com.ieolympicstickets.backend.service;
 
 import com.ieolympicstickets.backend.model.Offer;
 import com.ieolympicstickets.backend.repository.OfferRepository;
+import com.ieolympicstickets.backend.repository.projection.OfferSummary;
+import com.ieolympicstickets.backend.util.KeysetPage;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class OfferService {
     private final OfferRepository offerRepository;
+    private final HotStockLedger hotStockLedger;
+    private final CatalogCache catalogCache;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public OfferService(OfferRepository offerRepository) {
+    public OfferService(OfferRepository offerRepository, HotStockLedger hotStockLedger,
+                        CatalogCache catalogCache, ApplicationEventPublisher eventPublisher) {
         this.offerRepository=offerRepository;
+        this.hotStockLedger=hotStockLedger;
+        this.catalogCache = catalogCache;
+        this.eventPublisher = eventPublisher;
     }
     public List<Offer> findAllOffers(){
-        return offerRepository.findAll();
+        return offerRepository.findAllWithEvent();
     }
 
+    /** Offres par id, à partir du curseur (null = première page) */
+    public KeysetPage<Offer> findOffersPage(KeysetPage.Cursor after, int limit) {
+        PageRequest rows = PageRequest.of(0, limit + 1);
+        List<Offer> offers = after == null
+                ? offerRepository.findFirstPage(rows)
+                : offerRepository.findPageAfter(after.id(), rows);
+        return KeysetPage.of(offers, limit, o -> KeysetPage.Cursor.of(o.getOfferId()));
+    }
+
+    /** Même pagination, colonnes de liste seulement, épreuve jointe dans la même requête */
+    public KeysetPage<OfferSummary> findOfferSummariesPage(KeysetPage.Cursor after, int limit) {
+        PageRequest rows = PageRequest.of(0, limit + 1);
+        List<OfferSummary> offers = after == null
+                ? offerRepository.findSummaryFirstPage(rows)
+                : offerRepository.findSummaryPageAfter(after.id(), rows);
+        return KeysetPage.of(offers, limit, o -> KeysetPage.Cursor.of(o.offerId()));
+    }
+
+    public Optional<Offer> findOfferById(Long offerId) {
+        return offerRepository.findWithEventByOfferId(offerId);
+    }
+
+    /**
+     * Plusieurs offres en une requête (IN sur la clé primaire), dans l'ordre des ids demandés.
+     * Les ids inconnus sont ignorés.
+     */
+    public List<OfferSummary> findOffersByIds(Collection<Long> offerIds) {
+        if (offerIds.isEmpty()) {
+            return List.of();
+        }
+        Set<Long> distinct = new LinkedHashSet<>(offerIds);
+        Map<Long, OfferSummary> byId = new HashMap<>();
+        for (OfferSummary offer : offerRepository.findSummariesByOfferIdIn(distinct)) {
+            byId.put(offer.offerId(), offer);
+        }
+        List<OfferSummary> offers = new ArrayList<>(byId.size());
+        for (Long id : distinct) {
+            OfferSummary offer = byId.get(id);
+            if (offer != null) {
+                offers.add(offer);
+            }
+        }
+        return offers;
+    }
+
+    //read through the catalog cache (short TTL: the stock moves with every purchase)
     public List<Offer> findOffersByEvent(Long eventId) {
-        return offerRepository.findByEventId(eventId);
+        return catalogCache.offersByEvent(eventId, () -> offerRepository.findByEventId(eventId));
     }
 
     public Offer saveOffer(Offer offer) {
-     return offerRepository.save(offer);
+        //an offer moved to another event changes both lists
+        Set<Long> eventIds = new HashSet<>(eventIdOf(offer.getOfferId()));
+        Offer saved = offerRepository.save(offer);
+        //hot offers: the in-memory stock restarts from the saved value
+        hotStockLedger.onOfferSaved(saved);
+        eventIds.add(saved.getEvent().getId());
+        eventPublisher.publishEvent(new CatalogChangedEvent(eventIds));
+        return saved;
     }
     public void deleteOffer(Long id) {
+        Set<Long> eventIds = eventIdOf(id);
+        hotStockLedger.untrack(id);
         offerRepository.deleteById(id);
+        eventPublisher.publishEvent(new CatalogChangedEvent(eventIds));
+    }
+
+    private Set<Long> eventIdOf(Long offerId) {
+        if (offerId == null) {
+            return Set.of();
+        }
+        return offerRepository.findById(offerId)
+                .map(o -> Set.of(o.getEvent().getId()))
+                .orElse(Set.of());
     }
 
 
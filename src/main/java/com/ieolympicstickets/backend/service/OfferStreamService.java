@@ -0,0 +1,262 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.repository.OfferRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Flux SSE du stock des offres d'une épreuve, à la place du polling de /api/events/{id}/offers.
+ * <p>
+ * Un tick (tick-ms) lit en une requête le stock de toutes les épreuves suivies, quel que soit
+ * le nombre d'abonnés, et ne diffuse que les offres qui ont changé : au plus une mise à jour
+ * par offre et par tick. Les connexions sont asynchrones (pas de thread par abonné) ; l'envoi
+ * passe par un petit pool. Chaque abonné a un tampon fusionné par offre (seule la dernière
+ * valeur compte), donc borné par le nombre d'offres de l'épreuve : un client lent reçoit moins
+ * de messages. Un client qui ne lit plus bloque son envoi : passé max-stalled-ticks ticks d'envoi
+ * en cours (pas d'attente dans la file du pool), le tick termine son emitter en erreur, ce qui fait
+ * échouer l'écriture bloquée et libère le thread d'envoi (EventSource se reconnecte et repart
+ * d'un état complet).
+ */
+@Service
+public class OfferStreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(OfferStreamService.class);
+
+    private final OfferRepository offerRepository;
+    private final HotStockLedger hotStockLedger;
+    private final long timeoutMillis;
+    private final int maxSubscribers;
+    private final int maxStalledTicks;
+    private final ThreadPoolExecutor senders;
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    //eventId -> offerId -> last stock sent; ticker thread only
+    private final Map<Long, Map<Long, Integer>> published = new HashMap<>();
+
+    public OfferStreamService(OfferRepository offerRepository,
+                              HotStockLedger hotStockLedger,
+                              MeterRegistry meterRegistry,
+                              @Value("${offers.stream.timeout-ms:1800000}") long timeoutMillis,
+                              @Value("${offers.stream.max-subscribers:20000}") int maxSubscribers,
+                              @Value("${offers.stream.max-stalled-ticks:40}") int maxStalledTicks,
+                              @Value("${offers.stream.sender-threads:8}") int senderThreads) {
+        this.offerRepository = offerRepository;
+        this.hotStockLedger = hotStockLedger;
+        this.timeoutMillis = timeoutMillis;
+        this.maxSubscribers = maxSubscribers;
+        this.maxStalledTicks = maxStalledTicks;
+        AtomicInteger counter = new AtomicInteger();
+        this.senders = new ThreadPoolExecutor(senderThreads, senderThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxSubscribers)),
+                r -> {
+                    Thread t = new Thread(r, "offer-stream-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        meterRegistry.gauge("offers.stream.subscribers", subscriberCount);
+    }
+
+    @PreDestroy
+    public void stop() {
+        senders.shutdownNow();
+        subscribers.values().forEach(set -> set.forEach(s -> s.emitter.complete()));
+    }
+
+    /**
+     * Ouvre un flux : le premier message contient toutes les offres de l'épreuve,
+     * les suivants seulement celles dont le stock a changé.
+     * @throws ResponseStatusException 503 si le nombre maximum d'abonnés est atteint
+     */
+    public SseEmitter subscribe(Long eventId) {
+        //initial state read now, not from the last tick: the event may not be followed yet
+        Map<Long, Integer> initial = currentStock(List.of(eventId)).getOrDefault(eventId, Map.of());
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Trop d'abonnés, réessayez plus tard");
+        }
+        Subscriber subscriber = new Subscriber(eventId, new SseEmitter(timeoutMillis));
+        subscriber.emitter.onCompletion(() -> unsubscribe(subscriber));
+        subscriber.emitter.onTimeout(() -> unsubscribe(subscriber));
+        subscriber.emitter.onError(e -> unsubscribe(subscriber));
+        subscribers.computeIfAbsent(eventId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        subscriber.offer(initial);
+        schedule(subscriber);
+        return subscriber.emitter;
+    }
+
+    @Scheduled(fixedDelayString = "${offers.stream.tick-ms:250}")
+    public void tick() {
+        published.keySet().retainAll(subscribers.keySet());
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        Map<Long, Map<Long, Integer>> stock = currentStock(new ArrayList<>(subscribers.keySet()));
+        stock.forEach((eventId, offers) -> {
+            Map<Long, Integer> last = published.computeIfAbsent(eventId, id -> new HashMap<>());
+            Map<Long, Integer> changed = new LinkedHashMap<>();
+            offers.forEach((offerId, value) -> {
+                if (!value.equals(last.put(offerId, value))) {
+                    changed.put(offerId, value);
+                }
+            });
+            Set<Subscriber> set = subscribers.get(eventId);
+            if (changed.isEmpty() || set == null) {
+                return;
+            }
+            for (Subscriber subscriber : set) {
+                subscriber.offer(changed);
+                schedule(subscriber);
+            }
+        });
+        abortStalled();
+    }
+
+    //only a send in progress counts: waiting in the pool queue behind a blocked sender is not the client's fault
+    private void abortStalled() {
+        subscribers.values().forEach(set -> set.forEach(subscriber -> {
+            if (subscriber.sending) {
+                if (++subscriber.stalledTicks > maxStalledTicks) {
+                    log.debug("Slow offer stream consumer for event {} disconnected", subscriber.eventId);
+                    unsubscribe(subscriber);
+                    //does not wait for the blocked send: ends the async request, the write fails
+                    subscriber.emitter.completeWithError(new IOException("Offer stream consumer too slow"));
+                }
+            } else {
+                subscriber.stalledTicks = 0;
+            }
+        }));
+    }
+
+    /** Commentaire SSE périodique : détecte les connexions mortes et garde les proxys ouverts */
+    @Scheduled(fixedDelayString = "${offers.stream.heartbeat-ms:15000}")
+    public void heartbeat() {
+        subscribers.values().forEach(set -> set.forEach(subscriber -> {
+            subscriber.heartbeat = true;
+            schedule(subscriber);
+        }));
+    }
+
+    private Map<Long, Map<Long, Integer>> currentStock(List<Long> eventIds) {
+        Map<Long, Map<Long, Integer>> stock = new HashMap<>();
+        for (Object[] row : offerRepository.findStockByEventIdIn(eventIds)) {
+            Long offerId = (Long) row[1];
+            //hot offers: the database lags behind the in-memory ledger
+            int available = hotStockLedger.isTracked(offerId)
+                    ? Math.max(0, hotStockLedger.available(offerId)) : (Integer) row[2];
+            stock.computeIfAbsent((Long) row[0], id -> new LinkedHashMap<>()).put(offerId, available);
+        }
+        return stock;
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.closed || !subscriber.scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            senders.execute(() -> drain(subscriber));
+        } catch (RejectedExecutionException e) {
+            //retried at the next tick
+            subscriber.scheduled.set(false);
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            List<StockUpdate> updates = subscriber.take();
+            subscriber.sending = true;
+            if (!subscriber.closed && !updates.isEmpty()) {
+                subscriber.emitter.send(SseEmitter.event().name("stock").data(updates, MediaType.APPLICATION_JSON));
+            } else if (!subscriber.closed && subscriber.heartbeat) {
+                subscriber.emitter.send(SseEmitter.event().comment("ping"));
+            }
+            subscriber.heartbeat = false;
+            if (subscriber.closed) {
+                subscriber.emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            //client gone
+            unsubscribe(subscriber);
+            subscriber.emitter.completeWithError(e);
+        } finally {
+            subscriber.sending = false;
+            subscriber.scheduled.set(false);
+        }
+        if (subscriber.hasPending()) {
+            schedule(subscriber);
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        synchronized (subscriber) {
+            if (subscriber.closed) {
+                return;
+            }
+            subscriber.closed = true;
+        }
+        subscriberCount.decrementAndGet();
+        subscribers.computeIfPresent(subscriber.eventId, (id, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private final class Subscriber {
+        private final Long eventId;
+        private final SseEmitter emitter;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        //offerId -> latest stock not sent yet; guarded by this
+        private Map<Long, Integer> pending = new LinkedHashMap<>();
+        private volatile boolean closed;
+        private volatile boolean heartbeat;
+        //a sender thread is writing to the connection
+        private volatile boolean sending;
+        //ticks spent in the current send; ticker thread only
+        private int stalledTicks;
+
+        private Subscriber(Long eventId, SseEmitter emitter) {
+            this.eventId = eventId;
+            this.emitter = emitter;
+        }
+
+        private synchronized void offer(Map<Long, Integer> stock) {
+            pending.putAll(stock);
+        }
+
+        private synchronized List<StockUpdate> take() {
+            List<StockUpdate> updates = new ArrayList<>(pending.size());
+            pending.forEach((offerId, stock) -> updates.add(new StockUpdate(offerId, stock, stock <= 0)));
+            pending = new LinkedHashMap<>();
+            return updates;
+        }
+
+        private synchronized boolean hasPending() {
+            return !pending.isEmpty() && !closed;
+        }
+    }
+
+    public record StockUpdate(Long offerId, int stock, boolean soldOut) {}
+}
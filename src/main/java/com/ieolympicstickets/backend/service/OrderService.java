@@ -1,50 +1,131 @@
 package com.ieolympicstickets.backend.service;
 
 import com.ieolympicstickets.backend.model.Order;
+import com.ieolympicstickets.backend.model.OrderLine;
+import com.ieolympicstickets.backend.model.OrderStatus;
 import com.ieolympicstickets.backend.model.User;
+import com.ieolympicstickets.backend.repository.OrderLineRepository;
 import com.ieolympicstickets.backend.repository.OrderRepository;
 import com.ieolympicstickets.backend.repository.TicketRepository;
+import com.ieolympicstickets.backend.repository.projection.OrderItemSummary;
+import com.ieolympicstickets.backend.util.KeysetPage;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.security.access.AccessDeniedException;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class OrderService {
     private final OrderRepository orderRepository;
     private final TicketRepository ticketRepository;
+    private final OrderLineRepository orderLineRepository;
+    private final InventoryService inventoryService;
 
     public OrderService(
             OrderRepository orderRepository,
-            TicketRepository ticketRepository) {
+            TicketRepository ticketRepository,
+            OrderLineRepository orderLineRepository,
+            InventoryService inventoryService) {
 
         this.orderRepository = orderRepository;
         this.ticketRepository= ticketRepository;
+        this.orderLineRepository = orderLineRepository;
+        this.inventoryService = inventoryService;
     }
 
     @Transactional
     public Order createOrder(User user, BigDecimal total) {
+        return createOrder(user, total, OrderStatus.ISSUED, List.of());
+    }
+
+    /**
+     * Crée la commande et ses lignes (offre, quantité, prix unitaire).
+     * @param lines lignes sans commande, rattachées ici
+     */
+    @Transactional
+    public Order createOrder(User user, BigDecimal total, OrderStatus status, List<OrderLine> lines) {
         Order order = Order.builder()
                 .user(user)
                 .total(total)
                 .createdAt(LocalDateTime.now())
+                .status(status)
                 .build();
-        return orderRepository.save(order);
+        order = orderRepository.save(order);
+        for (OrderLine line : lines) {
+            line.setOrder(order);
+        }
+        orderLineRepository.saveAll(lines);
+        return order;
+    }
+
+    /**
+     * Paiement accepté : PENDING_PAYMENT -> PAID.
+     * @return false si la commande a été annulée entre-temps (paiement à rembourser)
+     */
+    @Transactional
+    public boolean markPaid(Long orderId) {
+        return orderRepository.transition(orderId, OrderStatus.PENDING_PAYMENT, OrderStatus.PAID) == 1;
+    }
+
+    /**
+     * Paiement refusé ou jamais confirmé : PENDING_PAYMENT -> CANCELLED et remise en stock.
+     * @return false si la commande n'était plus en attente de paiement (déjà payée ou annulée)
+     */
+    @Transactional
+    public boolean cancelUnpaid(Long orderId) {
+        if (orderRepository.transition(orderId, OrderStatus.PENDING_PAYMENT, OrderStatus.CANCELLED) != 1) {
+            return false;
+        }
+        Map<Long, Integer> units = new LinkedHashMap<>();
+        for (OrderLine line : orderLineRepository.findByOrderIdWithOffer(orderId)) {
+            units.merge(line.getOffer().getOfferId(), line.getQuantity(), Integer::sum);
+        }
+        inventoryService.releaseUnits(units);
+        return true;
+    }
+
+    /** Charge la commande avec un verrou d'écriture, dans la transaction courante */
+    public Order lockOrder(Long orderId) {
+        return orderRepository.findByIdForUpdate(orderId)
+                .orElseThrow(() -> new IllegalStateException("Commande introuvable : " + orderId));
+    }
+
+    @Transactional(readOnly = true)
+    public long countIssuedTickets(Long orderId) {
+        return ticketRepository.countByOrderId(orderId);
     }
 
     public List<Order> listUserOrders(User user) {
         return orderRepository.findByUser(user);
     }
 
+    /** Commandes de l'utilisateur, plus récentes d'abord, à partir du curseur (null = première page) */
+    @Transactional(readOnly = true)
+    public KeysetPage<Order> listUserOrders(User user, KeysetPage.Cursor after, int limit) {
+        PageRequest rows = PageRequest.of(0, limit + 1);
+        List<Order> orders = after == null
+                ? orderRepository.findFirstPageByUser(user, rows)
+                : orderRepository.findPageByUserBefore(user, after.at(), after.id(), rows);
+        return KeysetPage.of(orders, limit, o -> new KeysetPage.Cursor(o.getCreatedAt(), o.getId()));
+    }
+
     public Order getOrderByIdAndUser(Long orderId, User user) {
         return orderRepository.findById(orderId)
                 .filter(o -> o.getUser().getId().equals(user.getId()))
                 .orElseThrow(() -> new AccessDeniedException("Order not found or not yours"));
     }
 
+    /** Billets de la commande avec le nom de leur offre, en une requête */
+    public List<OrderItemSummary> listOrderItems(Long orderId) {
+        return ticketRepository.findItemsByOrderId(orderId);
+    }
+
        public long countItemsSoldByOffer(Long offerId) {
         return ticketRepository.countByOfferOfferId(offerId);
     }
@@ -0,0 +1,23 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.exceptions.PaymentException;
+
+import java.math.BigDecimal;
+
+/**
+ * Prestataire de paiement. Appelé uniquement par {@link PaymentService},
+ * qui borne la concurrence, les délais et coupe le circuit en cas de panne.
+ */
+public interface PaymentGateway {
+
+    /**
+     * @param amount montant en euros
+     * @param token  jeton de paiement du client
+     * @return true si le paiement est accepté, false s'il est refusé (carte, fonds...)
+     * @throws PaymentException si le prestataire est en erreur ou limite le débit
+     */
+    boolean charge(BigDecimal amount, String token) throws PaymentException;
+
+    /** Rembourse un paiement accepté */
+    void refund(BigDecimal amount, String token) throws PaymentException;
+}
@@ -1,22 +1,171 @@
 package com.ieolympicstickets.backend.service;
 
+import com.ieolympicstickets.backend.util.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.ieolympicstickets.backend.exceptions.PaymentException;
+import com.ieolympicstickets.backend.exceptions.PaymentPendingException;
 
+/**
+ * Client du {@link PaymentGateway}, qui borne ce que le prestataire peut coûter au reste de l'API :
+ * <ul>
+ *     <li>bulkhead : au plus max-concurrent appels en cours et queue-capacity en attente, au-delà refus immédiat ;</li>
+ *     <li>timeout : l'appelant n'attend jamais plus de timeout-ms ;</li>
+ *     <li>disjoncteur : si trop d'appels échouent, refus immédiat pendant open-seconds.</li>
+ * </ul>
+ * Un appel en timeout n'est pas annulé : la carte peut encore être débitée. L'appelant reçoit une
+ * {@link PaymentPendingException} dont la réponse tardive arrive sur le thread payment-settlement.
+ * Avec un vrai prestataire, il faudra aussi lui passer une clé d'idempotence, pour retrouver
+ * l'état d'un paiement perdu par un redémarrage.
+ */
 @Service
 public class PaymentService {
+
+    private final PaymentGateway gateway;
+    private final ThreadPoolExecutor executor;
+    //late outcomes of timed out calls, away from the bulkhead threads
+    private final ExecutorService settlement;
+    private final CircuitBreaker circuitBreaker;
+    private final long timeoutMillis;
+    private final MeterRegistry meterRegistry;
+
+    public PaymentService(PaymentGateway gateway,
+                          MeterRegistry meterRegistry,
+                          @Value("${payment.max-concurrent:50}") int maxConcurrent,
+                          @Value("${payment.queue-capacity:50}") int queueCapacity,
+                          @Value("${payment.timeout-ms:3000}") long timeoutMillis,
+                          @Value("${payment.circuit.window:50}") int window,
+                          @Value("${payment.circuit.minimum-calls:20}") int minimumCalls,
+                          @Value("${payment.circuit.failure-rate:0.5}") double failureRate,
+                          @Value("${payment.circuit.open-seconds:10}") long openSeconds) {
+        this.gateway = gateway;
+        this.meterRegistry = meterRegistry;
+        this.timeoutMillis = timeoutMillis;
+        this.circuitBreaker = new CircuitBreaker(window, minimumCalls, failureRate, Duration.ofSeconds(openSeconds));
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "payment-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.settlement = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "payment-settlement");
+            t.setDaemon(true);
+            return t;
+        });
+        meterRegistry.gauge("payment.bulkhead.active", executor, ThreadPoolExecutor::getActiveCount);
+        meterRegistry.gauge("payment.bulkhead.queued", executor, e -> e.getQueue().size());
+        meterRegistry.gauge("payment.circuit.open", circuitBreaker,
+                cb -> cb.state() == CircuitBreaker.State.CLOSED ? 0 : 1);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+        settlement.shutdown();
+    }
+
     /**
-     * Simule un paiement pour un montant donné.
+     * Paiement d'un montant donné.
      * @param amount montant à payer en euros
-     * @param token jeton de paiement (dummy pour mock)
+     * @param token jeton de paiement
      * @return true si le paiement est accepté
-     * @throws PaymentException en cas d'erreur
+     * @throws PaymentPendingException pas de réponse dans le délai, le paiement peut encore aboutir
+     * @throws PaymentException prestataire en erreur, saturé ou circuit ouvert : rien n'a été débité
      */
     public boolean pay(BigDecimal amount, String token) throws PaymentException {
-        // Log pour mock
-        System.out.println("[MOCK PAYMENT] amount=" + amount + " token=" + token);
-        // Toujours accepté
-        return true;
+        return call("charge", () -> gateway.charge(amount, token));
+    }
+
+    /**
+     * Remboursement d'un paiement accepté (commande annulée entre-temps).
+     * @throws PaymentException en cas d'erreur
+     */
+    public void refund(BigDecimal amount, String token) throws PaymentException {
+        call("refund", () -> {
+            gateway.refund(amount, token);
+            return true;
+        });
+    }
+
+    private boolean call(String operation, Callable<Boolean> action) throws PaymentException {
+        if (!circuitBreaker.tryAcquire()) {
+            record(operation, "circuit_open", 0);
+            throw new PaymentException("Service de paiement momentanément indisponible");
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(action.call());
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //bulkhead full: not the gateway's fault, the breaker is not told
+            circuitBreaker.onIgnored();
+            record(operation, "rejected", 0);
+            throw new PaymentException("Service de paiement saturé, réessayez");
+        }
+        try {
+            boolean result = future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            circuitBreaker.onSuccess();
+            record(operation, result ? "accepted" : "declined", System.nanoTime() - start);
+            return result;
+        } catch (TimeoutException e) {
+            circuitBreaker.onFailure();
+            record(operation, "timeout", System.nanoTime() - start);
+            throw pending(operation, future, start, "Délai de paiement dépassé, paiement en cours de confirmation");
+        } catch (ExecutionException e) {
+            circuitBreaker.onFailure();
+            record(operation, "error", System.nanoTime() - start);
+            if (e.getCause() instanceof PaymentException pe) {
+                throw pe;
+            }
+            throw new PaymentException("Erreur du prestataire de paiement : " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            circuitBreaker.onIgnored();
+            Thread.currentThread().interrupt();
+            throw pending(operation, future, start, "Paiement interrompu, paiement en cours de confirmation");
+        }
+    }
+
+    //the call keeps running: its outcome is handed over on the settlement thread
+    private PaymentPendingException pending(String operation, CompletableFuture<Boolean> future, long start,
+                                            String message) {
+        CompletableFuture<Boolean> outcome = future.whenCompleteAsync((result, failure) -> record(operation,
+                failure != null ? "late_error" : result ? "late_accepted" : "late_declined",
+                System.nanoTime() - start), settlement);
+        return new PaymentPendingException(message, outcome);
+    }
+
+    private void record(String operation, String outcome, long nanos) {
+        Timer.builder("payment.gateway.calls")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
     }
 }
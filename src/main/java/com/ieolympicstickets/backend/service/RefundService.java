@@ -0,0 +1,139 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.exceptions.PaymentException;
+import com.ieolympicstickets.backend.model.PaymentRefund;
+import com.ieolympicstickets.backend.repository.PaymentRefundRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Remboursement des paiements acceptés pour une commande annulée (paiement tardif, reprise).
+ * Un remboursement refusé par le prestataire n'est pas perdu : il est enregistré
+ * ({@link PaymentRefund}), retenté par {@link CheckoutRecoveryService} jusqu'à max-attempts,
+ * puis reste visible des admins qui peuvent le relancer.
+ */
+@Service
+public class RefundService {
+
+    private static final Logger log = LoggerFactory.getLogger(RefundService.class);
+
+    private final PaymentRefundRepository paymentRefundRepository;
+    private final PaymentService paymentService;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxAttempts;
+
+    public RefundService(PaymentRefundRepository paymentRefundRepository,
+                         PaymentService paymentService,
+                         TransactionTemplate transactionTemplate,
+                         @Value("${checkout.refund.max-attempts:20}") int maxAttempts) {
+        this.paymentRefundRepository = paymentRefundRepository;
+        this.paymentService = paymentService;
+        this.transactionTemplate = transactionTemplate;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /** Rembourse tout de suite ; en cas d'échec, le remboursement est enregistré pour être retenté */
+    public void refund(Long orderId, BigDecimal amount, String paymentToken) {
+        try {
+            paymentService.refund(amount, paymentToken);
+            return;
+        } catch (PaymentException e) {
+            log.error("Refund failed for cancelled order {}, recorded for retry", orderId, e);
+            try {
+                paymentRefundRepository.save(PaymentRefund.builder()
+                        .orderId(orderId)
+                        .amount(amount)
+                        .paymentToken(paymentToken)
+                        .attempts(1)
+                        .lastError(truncate(e.getMessage()))
+                        .createdAt(Instant.now())
+                        .build());
+            } catch (DataAccessException ex) {
+                log.error("Could not record the refund of order {} ({} EUR), manual refund needed", orderId, amount, ex);
+            }
+        }
+    }
+
+    /** Retente les remboursements en attente qui n'ont pas épuisé leurs tentatives */
+    public void retryPending() {
+        for (Long id : paymentRefundRepository.findRetryableIds(maxAttempts)) {
+            try {
+                attempt(id);
+            } catch (RuntimeException ex) {
+                log.error("Could not retry refund {}", id, ex);
+            }
+        }
+    }
+
+    /** Remboursements en attente, tentatives épuisées comprises */
+    public List<PaymentRefund> pending() {
+        return paymentRefundRepository.findPending();
+    }
+
+    /**
+     * Relance manuelle (admin), même après max-attempts.
+     * @throws ResponseStatusException 404 inconnu, 409 déjà remboursé ou tentative en cours
+     */
+    public PaymentRefund retry(Long id) {
+        PaymentRefund refund = paymentRefundRepository.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Remboursement introuvable"));
+        if (refund.getRefundedAt() != null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Déjà remboursé");
+        }
+        if (!attempt(id)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Tentative déjà en cours");
+        }
+        return paymentRefundRepository.findById(id).orElseThrow();
+    }
+
+    //claims the attempt first so two instances never refund the same payment at once
+    private boolean attempt(Long id) {
+        PaymentRefund claimed = transactionTemplate.execute(s -> {
+            PaymentRefund refund = paymentRefundRepository.findById(id).orElse(null);
+            if (refund == null || refund.getRefundedAt() != null
+                    || paymentRefundRepository.claimAttempt(id, refund.getAttempts()) != 1) {
+                return null;
+            }
+            return refund;
+        });
+        if (claimed == null) {
+            return false;
+        }
+        String error = null;
+        try {
+            paymentService.refund(claimed.getAmount(), claimed.getPaymentToken());
+        } catch (PaymentException e) {
+            error = truncate(e.getMessage());
+        }
+        String lastError = error;
+        transactionTemplate.executeWithoutResult(s -> paymentRefundRepository.findById(id).ifPresent(refund -> {
+            if (lastError == null) {
+                refund.setRefundedAt(Instant.now());
+                refund.setPaymentToken(null);
+            } else {
+                refund.setLastError(lastError);
+            }
+            paymentRefundRepository.save(refund);
+        }));
+        if (lastError == null) {
+            log.info("Refund of order {} done after {} attempts", claimed.getOrderId(), claimed.getAttempts() + 1);
+        } else {
+            log.warn("Refund of order {} failed again: {}", claimed.getOrderId(), lastError);
+        }
+        return true;
+    }
+
+    private static String truncate(String message) {
+        return message == null || message.length() <= 255 ? message : message.substring(0, 255);
+    }
+}
@@ -0,0 +1,256 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.repository.TicketRepository;
+import com.ieolympicstickets.backend.service.TicketService.ScanResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journal des scans (table scan_event) et débit par portique.
+ * <p>
+ * Les scans sont mis en file et écrits par un seul thread en commit groupé : le premier scan
+ * arrivé attend au plus flush-ms que d'autres le rejoignent, puis tout le lot part en un INSERT
+ * batché et un seul commit. Le scan lui-même n'attend jamais l'écriture ; file pleine ou base
+ * en erreur, les lignes sont perdues et comptées (tickets.scan_log.dropped / failed).
+ * <p>
+ * Débit et taux de refus par portique sur les RATE_WINDOW dernières secondes, en mémoire
+ * (propres à l'instance) et exposés en gauges Micrometer.
+ */
+@Service
+public class ScanLogService {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanLogService.class);
+    private static final String INSERT_SQL =
+            "INSERT INTO scan_event (ticket_id, qr, gate_id, employee, result, scanned_at) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final int RATE_WINDOW = 10;
+    private static final int MAX_QR_LENGTH = 255;
+    private static final String OTHER_GATES = "other";
+
+    private final TicketRepository ticketRepository;
+    private final SignedTicketService signedTicketService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final BlockingQueue<Entry> queue;
+    private final long flushNanos;
+    private final int maxBatch;
+    private final int maxGates;
+    private final Map<String, GateStats> gates = new ConcurrentHashMap<>();
+    private final Counter dropped;
+    private final Counter failed;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public ScanLogService(TicketRepository ticketRepository,
+                          SignedTicketService signedTicketService,
+                          JdbcTemplate jdbcTemplate,
+                          TransactionTemplate transactionTemplate,
+                          MeterRegistry meterRegistry,
+                          @Value("${tickets.scan-log.queue-capacity:100000}") int queueCapacity,
+                          @Value("${tickets.scan-log.flush-ms:5}") long flushMillis,
+                          @Value("${tickets.scan-log.max-batch:1000}") int maxBatch,
+                          @Value("${tickets.scan-log.max-gates:500}") int maxGates) {
+        this.ticketRepository = ticketRepository;
+        this.signedTicketService = signedTicketService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxGates = maxGates;
+        this.dropped = meterRegistry.counter("tickets.scan_log.dropped");
+        this.failed = meterRegistry.counter("tickets.scan_log.failed");
+        meterRegistry.gauge("tickets.scan_log.queued", queue, BlockingQueue::size);
+        this.writer = new Thread(this::run, "scan-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /** Écrit ce qui reste en file avant l'arrêt */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Scans d'un portique, dans l'ordre reçu ; ne bloque pas.
+     * @param employee email de l'employé authentifié
+     */
+    public void record(String gateId, String employee, List<ScanResult> results) {
+        Instant now = Instant.now();
+        GateStats stats = stats(gateId);
+        for (ScanResult result : results) {
+            boolean rejected = !ScanResult.SCANNED.equals(result.status());
+            stats.add(rejected, now.getEpochSecond());
+            meterRegistry.counter("tickets.scans", "gate", stats.gateId, "result", result.status()).increment();
+            if (!queue.offer(new Entry(result.qrHash(), gateId, employee, result.status(), now))) {
+                dropped.increment();
+            }
+        }
+    }
+
+    /** Débit des portiques actifs sur les dernières secondes */
+    public List<GateThroughput> gates() {
+        long now = Instant.now().getEpochSecond();
+        List<GateThroughput> result = new ArrayList<>(gates.size());
+        for (GateStats stats : gates.values()) {
+            GateThroughput throughput = stats.throughput(now);
+            if (throughput.scans() > 0) {
+                result.add(throughput);
+            }
+        }
+        result.sort(Comparator.comparing(GateThroughput::gateId));
+        return result;
+    }
+
+    //gate ids come from the client: beyond maxGates, new ones share one set of meters
+    private GateStats stats(String gateId) {
+        GateStats stats = gates.get(gateId);
+        if (stats != null) {
+            return stats;
+        }
+        String key = gates.size() >= maxGates ? OTHER_GATES : gateId;
+        return gates.computeIfAbsent(key, id -> {
+            GateStats created = new GateStats(id);
+            Gauge.builder("tickets.scans.gate.rate", created,
+                            s -> s.throughput(Instant.now().getEpochSecond()).scansPerSecond())
+                    .tag("gate", id).register(meterRegistry);
+            Gauge.builder("tickets.scans.gate.reject_rate", created,
+                            s -> s.throughput(Instant.now().getEpochSecond()).rejectRate())
+                    .tag("gate", id).register(meterRegistry);
+            return created;
+        });
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                //group commit: wait a little for the scans of the other gates
+                long deadline = System.nanoTime() + flushNanos;
+                while (batch.size() < maxBatch) {
+                    long left = deadline - System.nanoTime();
+                    Entry next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                failed.increment(batch.size());
+                log.warn("Scan log: {} entries lost", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Entry> batch) {
+        Set<String> plainHashes = new HashSet<>();
+        for (Entry entry : batch) {
+            if (!SignedTicketService.isSigned(entry.qr)) {
+                plainHashes.add(entry.qr);
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<String, Long> ticketIds = new HashMap<>();
+            if (!plainHashes.isEmpty()) {
+                for (Object[] row : ticketRepository.findIdsByQrHashIn(plainHashes)) {
+                    ticketIds.put((String) row[1], (Long) row[0]);
+                }
+            }
+            List<Object[]> rows = new ArrayList<>(batch.size());
+            for (Entry entry : batch) {
+                Long ticketId = ticketIds.get(entry.qr);
+                if (ticketId == null && SignedTicketService.isSigned(entry.qr)) {
+                    SignedTicketService.SignedTicket signed = signedTicketService.verify(entry.qr);
+                    ticketId = signed == null ? null : signed.ticketId();
+                }
+                String qr = ticketId != null ? null
+                        : entry.qr.length() > MAX_QR_LENGTH ? entry.qr.substring(0, MAX_QR_LENGTH) : entry.qr;
+                rows.add(new Object[]{ticketId, qr, entry.gateId, entry.employee, entry.result,
+                        Timestamp.from(entry.scannedAt)});
+            }
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+        });
+    }
+
+    private record Entry(String qr, String gateId, String employee, String result, Instant scannedAt) {}
+
+    /** Compteurs par seconde sur une fenêtre tournante de RATE_WINDOW secondes */
+    private static final class GateStats {
+        private final String gateId;
+        private final long[] seconds = new long[RATE_WINDOW];
+        private final long[] scans = new long[RATE_WINDOW];
+        private final long[] rejects = new long[RATE_WINDOW];
+
+        private GateStats(String gateId) {
+            this.gateId = gateId;
+        }
+
+        private synchronized void add(boolean rejected, long second) {
+            int i = (int) (second % RATE_WINDOW);
+            if (seconds[i] != second) {
+                seconds[i] = second;
+                scans[i] = 0;
+                rejects[i] = 0;
+            }
+            scans[i]++;
+            if (rejected) {
+                rejects[i]++;
+            }
+        }
+
+        private synchronized GateThroughput throughput(long now) {
+            long total = 0;
+            long rejected = 0;
+            for (int i = 0; i < RATE_WINDOW; i++) {
+                if (now - seconds[i] < RATE_WINDOW) {
+                    total += scans[i];
+                    rejected += rejects[i];
+                }
+            }
+            return new GateThroughput(gateId, (double) total / RATE_WINDOW,
+                    total == 0 ? 0 : (double) rejected / total, total, rejected);
+        }
+    }
+
+    /**
+     * @param scansPerSecond moyenne sur les 10 dernières secondes
+     * @param rejectRate     part des scans refusés (déjà utilisé, inconnu, invalide)
+     */
+    public record GateThroughput(String gateId, double scansPerSecond, double rejectRate, long scans, long rejects) {}
+}
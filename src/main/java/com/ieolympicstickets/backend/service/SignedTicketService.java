@@ -0,0 +1,153 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.util.Base45;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * QR signés, vérifiables hors ligne par les portiques.
+ * <p>
+ * Contenu : version, identifiant de clé, ids du billet, de l'épreuve et de l'offre, signature Ed25519,
+ * le tout encodé en base45 derrière le préfixe "IE1:" (93 octets, environ 140 caractères alphanumériques).
+ * Les portiques ne reçoivent que la clé publique ({@link #publicKeys}) : ils vérifient un QR sans réseau
+ * mais ne peuvent pas en fabriquer. L'état "utilisé" est renvoyé plus tard par /api/tickets/scan/batch.
+ * <p>
+ * La paire de clés doit être la même sur toutes les instances : sans tickets.signing.*, le démarrage
+ * échoue. En développement seulement, tickets.signing.generate-if-missing=true génère une clé
+ * temporaire, propre à l'instance et perdue au redémarrage.
+ */
+@Service
+public class SignedTicketService {
+
+    public static final String PREFIX = "IE1:";
+
+    private static final Logger log = LoggerFactory.getLogger(SignedTicketService.class);
+    private static final byte VERSION = 1;
+    private static final int SIGNATURE_LENGTH = 64;
+    //version + key id + ticket, event and offer ids
+    private static final int BODY_LENGTH = 1 + 4 + 3 * Long.BYTES;
+
+    private final PrivateKey privateKey;
+    private final PublicKey publicKey;
+    private final int keyId;
+    private final ThreadLocal<Signature> signers;
+    private final ThreadLocal<Signature> verifiers;
+
+    public SignedTicketService(@Value("${tickets.signing.private-key:}") String privateKeyBase64,
+                               @Value("${tickets.signing.public-key:}") String publicKeyBase64,
+                               @Value("${tickets.signing.generate-if-missing:false}") boolean generateIfMissing) {
+        if ((privateKeyBase64.isBlank() || publicKeyBase64.isBlank()) && !generateIfMissing) {
+            throw new IllegalStateException("tickets.signing.private-key and tickets.signing.public-key are required "
+                    + "(TICKET_SIGNING_PRIVATE_KEY / TICKET_SIGNING_PUBLIC_KEY); "
+                    + "set tickets.signing.generate-if-missing=true only for local development");
+        }
+        try {
+            KeyFactory factory = KeyFactory.getInstance("Ed25519");
+            if (privateKeyBase64.isBlank() || publicKeyBase64.isBlank()) {
+                KeyPair pair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+                this.privateKey = pair.getPrivate();
+                this.publicKey = pair.getPublic();
+                log.warn("No tickets.signing key pair configured, temporary key generated: "
+                        + "signed QR codes are only valid on this instance until it restarts");
+            } else {
+                this.privateKey = factory.generatePrivate(
+                        new PKCS8EncodedKeySpec(Base64.getDecoder().decode(privateKeyBase64.trim())));
+                this.publicKey = factory.generatePublic(
+                        new X509EncodedKeySpec(Base64.getDecoder().decode(publicKeyBase64.trim())));
+            }
+            this.keyId = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(publicKey.getEncoded())).getInt();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Invalid tickets.signing key pair", e);
+        }
+        this.signers = ThreadLocal.withInitial(() -> signature(s -> s.initSign(privateKey)));
+        this.verifiers = ThreadLocal.withInitial(() -> signature(s -> s.initVerify(publicKey)));
+    }
+
+    public String sign(Long ticketId, Long eventId, Long offerId) {
+        ByteBuffer token = ByteBuffer.allocate(BODY_LENGTH + SIGNATURE_LENGTH)
+                .put(VERSION).putInt(keyId).putLong(ticketId).putLong(eventId).putLong(offerId);
+        try {
+            Signature signer = signers.get();
+            signer.update(token.array(), 0, BODY_LENGTH);
+            token.put(signer.sign());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        return PREFIX + Base45.encode(token.array());
+    }
+
+    public static boolean isSigned(String qr) {
+        return qr != null && qr.startsWith(PREFIX);
+    }
+
+    /** @return le contenu du QR, ou null s'il est mal formé, d'une autre clé ou falsifié */
+    public SignedTicket verify(String qr) {
+        if (!isSigned(qr)) {
+            return null;
+        }
+        try {
+            byte[] token = Base45.decode(qr.substring(PREFIX.length()));
+            if (token.length != BODY_LENGTH + SIGNATURE_LENGTH) {
+                return null;
+            }
+            ByteBuffer body = ByteBuffer.wrap(token, 0, BODY_LENGTH);
+            if (body.get() != VERSION || body.getInt() != keyId) {
+                return null;
+            }
+            Signature verifier = verifiers.get();
+            verifier.update(token, 0, BODY_LENGTH);
+            if (!verifier.verify(Arrays.copyOfRange(token, BODY_LENGTH, token.length))) {
+                return null;
+            }
+            return new SignedTicket(body.getLong(), body.getLong(), body.getLong());
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    /** Clés de vérification à installer sur les portiques */
+    public List<VerificationKey> publicKeys() {
+        return List.of(new VerificationKey(Integer.toHexString(keyId), "Ed25519",
+                Base64.getEncoder().encodeToString(publicKey.getEncoded())));
+    }
+
+    private static Signature signature(SignatureInit init) {
+        try {
+            Signature signature = Signature.getInstance("Ed25519");
+            init.apply(signature);
+            return signature;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SignatureInit {
+        void apply(Signature signature) throws GeneralSecurityException;
+    }
+
+    public record SignedTicket(long ticketId, long eventId, long offerId) {}
+
+    /**
+     * @param keyId     identifiant de clé porté par les QR (4 premiers octets du SHA-256 de la clé publique)
+     * @param publicKey clé publique X.509 en base64
+     */
+    public record VerificationKey(String keyId, String algorithm, String publicKey) {}
+}
@@ -0,0 +1,94 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.exceptions.PaymentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Prestataire de paiement simulé, pour tester le checkout en charge sans vrai prestataire.
+ * <p>
+ * Latence log-normale définie par sa médiane et son p99 (0 = pas d'attente), taux d'erreur,
+ * taux de refus et limite de débit (au-delà : erreur "throttled", comme un 429 du prestataire).
+ * Par défaut tout est à 0 : chaque paiement est accepté immédiatement, comme l'ancien mock.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.gateway", havingValue = "simulator", matchIfMissing = true)
+public class SimulatedPaymentGateway implements PaymentGateway {
+
+    private static final Logger log = LoggerFactory.getLogger(SimulatedPaymentGateway.class);
+    //z-score of the 99th percentile of a standard normal
+    private static final double Z_99 = 2.326;
+
+    private final double mu;
+    private final double sigma;
+    private final boolean latency;
+    private final double errorRate;
+    private final double declineRate;
+    private final int throttleRps;
+
+    private long currentSecond;
+    private int callsThisSecond;
+
+    public SimulatedPaymentGateway(
+            @Value("${payment.simulator.latency-median-ms:0}") double medianMs,
+            @Value("${payment.simulator.latency-p99-ms:0}") double p99Ms,
+            @Value("${payment.simulator.error-rate:0}") double errorRate,
+            @Value("${payment.simulator.decline-rate:0}") double declineRate,
+            @Value("${payment.simulator.throttle-rps:0}") int throttleRps) {
+        this.latency = medianMs > 0;
+        this.mu = latency ? Math.log(medianMs) : 0;
+        this.sigma = latency && p99Ms > medianMs ? (Math.log(p99Ms) - mu) / Z_99 : 0;
+        this.errorRate = errorRate;
+        this.declineRate = declineRate;
+        this.throttleRps = throttleRps;
+    }
+
+    @Override
+    public boolean charge(BigDecimal amount, String token) throws PaymentException {
+        call();
+        boolean accepted = ThreadLocalRandom.current().nextDouble() >= declineRate;
+        log.debug("[SIMULATED PAYMENT] amount={} token={} accepted={}", amount, token, accepted);
+        return accepted;
+    }
+
+    @Override
+    public void refund(BigDecimal amount, String token) throws PaymentException {
+        call();
+        log.debug("[SIMULATED REFUND] amount={} token={}", amount, token);
+    }
+
+    private void call() throws PaymentException {
+        if (throttleRps > 0 && !admit()) {
+            throw new PaymentException("Prestataire de paiement : trop de requêtes (throttled)");
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (latency) {
+            long millis = Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PaymentException("Paiement interrompu");
+            }
+        }
+        if (random.nextDouble() < errorRate) {
+            throw new PaymentException("Prestataire de paiement indisponible (simulé)");
+        }
+    }
+
+    //fixed one-second window, good enough for a simulator
+    private synchronized boolean admit() {
+        long second = System.currentTimeMillis() / 1000;
+        if (second != currentSecond) {
+            currentSecond = second;
+            callsThisSecond = 0;
+        }
+        return ++callsThisSecond <= throttleRps;
+    }
+}
@@ -0,0 +1,154 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.model.CartItem;
+import com.ieolympicstickets.backend.repository.CartItemRepository;
+import com.ieolympicstickets.backend.util.HashedTimerWheel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blocage temporaire du stock à l'ajout au panier.
+ * <p>
+ * L'article garde heldQuantity unités réservées jusqu'à holdExpiresAt. Les échéances
+ * sont portées par un {@link HashedTimerWheel} : un seul thread tick toutes les secondes
+ * et rend au stock, par lots, les blocages arrivés à terme.
+ * La ligne cart_item fait foi : un timer périmé (article supprimé, blocage prolongé) ne fait rien.
+ */
+@Service
+public class StockHoldService {
+
+    private static final Logger log = LoggerFactory.getLogger(StockHoldService.class);
+    private static final int EXPIRY_CHUNK = 500;
+
+    private final CartItemRepository cartItemRepository;
+    private final InventoryService inventoryService;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+    private final int maxPerOffer;
+
+    private final HashedTimerWheel<Long> wheel = new HashedTimerWheel<>(Duration.ofSeconds(1), 1024);
+    private ScheduledExecutorService ticker;
+
+    public StockHoldService(CartItemRepository cartItemRepository,
+                            InventoryService inventoryService,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${cart.hold.ttl-seconds:600}") long ttlSeconds,
+                            @Value("${cart.hold.max-per-offer:10}") int maxPerOffer) {
+        this.cartItemRepository = cartItemRepository;
+        this.inventoryService = inventoryService;
+        this.transactionTemplate = transactionTemplate;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.maxPerOffer = maxPerOffer;
+    }
+
+    @PostConstruct
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "stock-hold-wheel");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(this::tick, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+    }
+
+    /** Ré-arme les timers des blocages en cours après un redémarrage */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rearm() {
+        List<Object[]> deadlines = cartItemRepository.findHoldDeadlines();
+        for (Object[] row : deadlines) {
+            Instant expiresAt = (Instant) row[1];
+            wheel.schedule((Long) row[0], expiresAt == null ? Instant.now() : expiresAt);
+        }
+        log.info("{} cart holds re-armed", deadlines.size());
+    }
+
+    /**
+     * Ajuste le stock bloqué de l'article à la nouvelle quantité et repart pour un TTL complet.
+     * À appeler dans la transaction qui enregistre l'article, ligne verrouillée.
+     * @throws ResponseStatusException 400 si la limite par offre est dépassée, 409 si le stock manque
+     */
+    public void hold(CartItem item, int quantity) {
+        if (quantity > maxPerOffer) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    String.format("Maximum %d billets par offre", maxPerOffer));
+        }
+        Long offerId = item.getOffer().getOfferId();
+        int delta = quantity - item.getHeldQuantity();
+        if (delta > 0) {
+            StockReservation reservation = inventoryService.reserve(Map.of(offerId, delta));
+            if (!reservation.isSuccessful()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, String.format(
+                        "Stock insuffisant pour '%s' : disponible %d",
+                        item.getOffer().getName(), reservation.getShortages().get(offerId)));
+            }
+        } else if (delta < 0) {
+            inventoryService.releaseUnits(Map.of(offerId, -delta));
+        }
+        item.setHeldQuantity(quantity);
+        item.setHoldExpiresAt(quantity > 0 ? Instant.now().plus(ttl) : null);
+    }
+
+    /** Rend le stock bloqué d'un article retiré du panier */
+    public void releaseHold(CartItem item) {
+        if (item.getHeldQuantity() > 0) {
+            inventoryService.releaseUnits(Map.of(item.getOffer().getOfferId(), item.getHeldQuantity()));
+            item.setHeldQuantity(0);
+            item.setHoldExpiresAt(null);
+        }
+    }
+
+    /** Planifie l'échéance d'un article enregistré (id connu) */
+    public void schedule(CartItem item) {
+        if (item.getHeldQuantity() > 0 && item.getHoldExpiresAt() != null) {
+            wheel.schedule(item.getId(), item.getHoldExpiresAt());
+        }
+    }
+
+    private void tick() {
+        try {
+            List<Long> due = wheel.advance();
+            for (int from = 0; from < due.size(); from += EXPIRY_CHUNK) {
+                expire(due.subList(from, Math.min(due.size(), from + EXPIRY_CHUNK)));
+            }
+        } catch (RuntimeException ex) {
+            //never let the ticker die
+            log.error("Cart hold expiry failed", ex);
+        }
+    }
+
+    private void expire(List<Long> itemIds) {
+        transactionTemplate.executeWithoutResult(s -> {
+            List<CartItem> expired = cartItemRepository.findExpiredHoldsForUpdate(itemIds, Instant.now());
+            Map<Long, Integer> released = new HashMap<>();
+            for (CartItem item : expired) {
+                released.merge(item.getOffer().getOfferId(), item.getHeldQuantity(), Integer::sum);
+                item.setHeldQuantity(0);
+                item.setHoldExpiresAt(null);
+            }
+            inventoryService.releaseUnits(released);
+        });
+    }
+}
@@ -0,0 +1,78 @@
+package com.ieolympicstickets.backend.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Résultat d'une réservation de stock faite par {@link InventoryService}.
+ * Soit toutes les quantités sont réservées, soit aucune (shortages non vide).
+ */
+public class StockReservation {
+
+    private enum State { PENDING, CONFIRMED, RELEASED }
+
+    //offerId -> quantité réservée par UPDATE en base
+    private final Map<Long, Integer> databaseQuantities;
+    //offerId -> quantité réservée dans le HotStockLedger
+    private final Map<Long, Integer> hotQuantities;
+    //offerId -> stock disponible au moment de l'échec
+    private final Map<Long, Integer> shortages;
+    private State state = State.PENDING;
+
+    StockReservation(Map<Long, Integer> databaseQuantities,
+                     Map<Long, Integer> hotQuantities,
+                     Map<Long, Integer> shortages) {
+        this.databaseQuantities = Collections.unmodifiableMap(databaseQuantities);
+        this.hotQuantities = Collections.unmodifiableMap(hotQuantities);
+        this.shortages = Collections.unmodifiableMap(shortages);
+    }
+
+    public boolean isSuccessful() {
+        return shortages.isEmpty();
+    }
+
+    /** offerId -> quantité réservée, toutes sources confondues */
+    public Map<Long, Integer> getQuantities() {
+        Map<Long, Integer> all = new LinkedHashMap<>(databaseQuantities);
+        all.putAll(hotQuantities);
+        return all;
+    }
+
+    public Map<Long, Integer> getShortages() {
+        return shortages;
+    }
+
+    Map<Long, Integer> getDatabaseQuantities() {
+        return databaseQuantities;
+    }
+
+    Map<Long, Integer> getHotQuantities() {
+        return hotQuantities;
+    }
+
+    public synchronized boolean isReleased() {
+        return state == State.RELEASED;
+    }
+
+    //true when the hot part has to be confirmed in the ledger
+    synchronized boolean markConfirmed() {
+        if (state != State.PENDING) {
+            return false;
+        }
+        state = State.CONFIRMED;
+        return true;
+    }
+
+    /**
+     * @return l'état avant libération, null si la réservation était déjà libérée
+     */
+    synchronized Boolean markReleased() {
+        if (state == State.RELEASED) {
+            return null;
+        }
+        boolean wasConfirmed = state == State.CONFIRMED;
+        state = State.RELEASED;
+        return wasConfirmed;
+    }
+}
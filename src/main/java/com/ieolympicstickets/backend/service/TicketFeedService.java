@@ -0,0 +1,169 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.repository.EventRepository;
+import com.ieolympicstickets.backend.repository.TicketRepository;
+import com.ieolympicstickets.backend.util.TinyLfuCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Billets valides d'une épreuve pour les portiques : un instantané, puis des deltas.
+ * <p>
+ * Chaque billet est réduit à l'empreinte 64 bits de son qrHash ({@link TicketScanIndex#fingerprint}).
+ * Les empreintes sont triées (non signées) et codées par écarts successifs en varint LEB128 :
+ * environ 7 octets par billet, 100 000 billets tiennent en 700 Ko.
+ * <p>
+ * Format (entiers big-endian) : magic "IETS" (instantané) ou "IETD" (delta), version (1 octet),
+ * eventId (8), seq (8), puis une ou deux listes : nombre (4) et écarts en varint.
+ * L'instantané contient les billets non utilisés ; le delta, les billets émis puis les billets
+ * utilisés depuis since, à appliquer dans cet ordre.
+ * <p>
+ * seq est l'instant de la lecture en millisecondes, à renvoyer tel quel en since. Le delta
+ * relit overlap-ms en arrière pour ne pas manquer une transaction validée en retard : un même
+ * billet peut revenir dans deux deltas, son application est idempotente.
+ */
+@Service
+public class TicketFeedService {
+
+    private static final byte[] SNAPSHOT_MAGIC = "IETS".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DELTA_MAGIC = "IETD".getBytes(StandardCharsets.US_ASCII);
+    private static final int FORMAT_VERSION = 1;
+    private static final int LOAD_BATCH = 10_000;
+
+    private final TicketRepository ticketRepository;
+    private final EventRepository eventRepository;
+    private final long overlapMillis;
+    //all the gates of a venue ask for the same snapshot when doors open
+    private final TinyLfuCache<Long, byte[]> snapshots;
+
+    public TicketFeedService(TicketRepository ticketRepository,
+                             EventRepository eventRepository,
+                             @Value("${tickets.feed.overlap-ms:60000}") long overlapMillis,
+                             @Value("${tickets.feed.snapshot-ttl-seconds:30}") long snapshotTtl,
+                             @Value("${tickets.feed.max-snapshots:50}") int maxSnapshots) {
+        this.ticketRepository = ticketRepository;
+        this.eventRepository = eventRepository;
+        this.overlapMillis = overlapMillis;
+        this.snapshots = new TinyLfuCache<>(maxSnapshots, Duration.ofSeconds(snapshotTtl));
+    }
+
+    /** @throws ResponseStatusException 404 si l'épreuve n'existe pas */
+    @Transactional(readOnly = true)
+    public byte[] snapshot(Long eventId) {
+        requireEvent(eventId);
+        return snapshots.get(eventId, this::buildSnapshot);
+    }
+
+    /**
+     * @param since seq de l'instantané ou du delta précédent
+     * @throws ResponseStatusException 404 si l'épreuve n'existe pas
+     */
+    @Transactional(readOnly = true)
+    public byte[] delta(Long eventId, long since) {
+        requireEvent(eventId);
+        long seq = System.currentTimeMillis();
+        Instant from = Instant.ofEpochMilli(since - overlapMillis);
+        long[] issued = fingerprints(ticketRepository.findQrHashesIssuedSince(eventId, from));
+        long[] used = fingerprints(ticketRepository.findQrHashesUsedSince(eventId, from));
+        Writer out = new Writer(DELTA_MAGIC, eventId, seq, 16 + 8 * (issued.length + used.length));
+        out.fingerprints(issued);
+        out.fingerprints(used);
+        return out.toByteArray();
+    }
+
+    private byte[] buildSnapshot(Long eventId) {
+        //seq taken before reading: a ticket issued meanwhile comes again in the next delta
+        long seq = System.currentTimeMillis();
+        long[] fingerprints = new long[1024];
+        int count = 0;
+        Long afterId = 0L;
+        List<Object[]> rows;
+        do {
+            rows = ticketRepository.findValidQrHashPage(eventId, afterId, PageRequest.of(0, LOAD_BATCH));
+            for (Object[] row : rows) {
+                if (count == fingerprints.length) {
+                    fingerprints = Arrays.copyOf(fingerprints, count * 2);
+                }
+                fingerprints[count++] = TicketScanIndex.fingerprint((String) row[1]);
+                afterId = (Long) row[0];
+            }
+        } while (rows.size() == LOAD_BATCH);
+        Writer out = new Writer(SNAPSHOT_MAGIC, eventId, seq, 32 + 8 * count);
+        out.fingerprints(Arrays.copyOf(fingerprints, count));
+        return out.toByteArray();
+    }
+
+    private void requireEvent(Long eventId) {
+        if (!eventRepository.existsById(eventId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Épreuve non trouvée : " + eventId);
+        }
+    }
+
+    private static long[] fingerprints(List<String> qrHashes) {
+        long[] result = new long[qrHashes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = TicketScanIndex.fingerprint(qrHashes.get(i));
+        }
+        return result;
+    }
+
+    private static final class Writer {
+        private final ByteArrayOutputStream bytes;
+        private final DataOutputStream out;
+
+        private Writer(byte[] magic, Long eventId, long seq, int sizeHint) {
+            this.bytes = new ByteArrayOutputStream(sizeHint);
+            this.out = new DataOutputStream(bytes);
+            try {
+                out.write(magic);
+                out.writeByte(FORMAT_VERSION);
+                out.writeLong(eventId);
+                out.writeLong(seq);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        //sorted as unsigned values, each written as its gap to the previous one
+        private void fingerprints(long[] values) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] ^= Long.MIN_VALUE;
+            }
+            Arrays.sort(values);
+            try {
+                out.writeInt(values.length);
+                long previous = 0;
+                for (long value : values) {
+                    long fingerprint = value ^ Long.MIN_VALUE;
+                    long gap = fingerprint - previous;
+                    while ((gap & ~0x7FL) != 0) {
+                        out.writeByte((int) (gap & 0x7F) | 0x80);
+                        gap >>>= 7;
+                    }
+                    out.writeByte((int) gap);
+                    previous = fingerprint;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.model.*;
+import com.ieolympicstickets.backend.repository.OrderLineRepository;
+import com.ieolympicstickets.backend.repository.OrderRepository;
+import com.ieolympicstickets.backend.repository.TicketRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Génération des billets d'une commande payée.
+ * <p>
+ * En mode synchrone les billets sont créés dans la transaction qui finalise la commande payée.
+ * En mode différé (checkout.async-issuance) la commande passe PENDING_ISSUANCE et un pool
+ * borné génère les billets par lots. Si la file est pleine ou après un crash, le balayage
+ * périodique reprend les commandes restées en attente.
+ */
+@Service
+public class TicketIssuanceService {
+
+    private static final Logger log = LoggerFactory.getLogger(TicketIssuanceService.class);
+
+    private final TicketRepository ticketRepository;
+    private final OrderRepository orderRepository;
+    private final OrderLineRepository orderLineRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TicketScanIndex ticketScanIndex;
+    private final int batchSize;
+    private final long sweepDelaySeconds;
+    //true: tickets are generated after the checkout returns (order PENDING_ISSUANCE)
+    private final boolean asyncIssuance;
+
+    private final ThreadPoolExecutor executor;
+    //orders queued or running, so the sweep does not submit them twice
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    public TicketIssuanceService(TicketRepository ticketRepository,
+                                 OrderRepository orderRepository,
+                                 OrderLineRepository orderLineRepository,
+                                 TransactionTemplate transactionTemplate,
+                                 TicketScanIndex ticketScanIndex,
+                                 @Value("${checkout.issuance.threads:4}") int threads,
+                                 @Value("${checkout.issuance.queue-capacity:1000}") int queueCapacity,
+                                 @Value("${checkout.issuance.batch-size:50}") int batchSize,
+                                 @Value("${checkout.issuance.sweep-delay-seconds:30}") long sweepDelaySeconds,
+                                 @Value("${checkout.async-issuance:false}") boolean asyncIssuance) {
+        this.ticketRepository = ticketRepository;
+        this.orderRepository = orderRepository;
+        this.orderLineRepository = orderLineRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.ticketScanIndex = ticketScanIndex;
+        this.batchSize = batchSize;
+        this.sweepDelaySeconds = sweepDelaySeconds;
+        this.asyncIssuance = asyncIssuance;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "ticket-issuance-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+    }
+
+    /**
+     * Génère les billets d'une commande PAID, tout de suite ou en différé selon la configuration.
+     * À appeler dans une transaction, commande verrouillée.
+     * @return les QR hashes générés (vide en mode différé)
+     */
+    public List<String> issuePaid(Order order) {
+        if (asyncIssuance) {
+            order.setStatus(OrderStatus.PENDING_ISSUANCE);
+            submitAfterCommit(order.getId());
+            return List.of();
+        }
+        return issueNow(order, order.getUser(), orderLineRepository.findByOrderIdWithOffer(order.getId()));
+    }
+
+    /**
+     * Crée les billets de la commande dans la transaction courante.
+     * @return les QR hashes générés
+     */
+    public List<String> issueNow(Order order, User user, List<OrderLine> lines) {
+        String accountKey = user.getUserKey();
+        List<String> qrHashes = new ArrayList<>();
+        List<Ticket> batch = new ArrayList<>(batchSize);
+        for (OrderLine line : lines) {
+            List<String> lineHashes = new ArrayList<>(line.getQuantity());
+            for (int i = 0; i < line.getQuantity(); i++) {
+                String purchaseKey = UUID.randomUUID().toString();
+                String qrHash = accountKey + purchaseKey;
+                batch.add(Ticket.builder()
+                        .user(user)
+                        .order(order)
+                        .offer(line.getOffer())
+                        .purchaseKey(purchaseKey)
+                        .qrHash(qrHash)
+                        .used(false)
+                        .build());
+                qrHashes.add(qrHash);
+                lineHashes.add(qrHash);
+                if (batch.size() == batchSize) {
+                    ticketRepository.saveAll(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            ticketScanIndex.addAfterCommit(line.getOffer().getEvent().getId(), lineHashes);
+        }
+        ticketRepository.saveAll(batch);
+        order.setStatus(OrderStatus.ISSUED);
+        return qrHashes;
+    }
+
+    /** Lance la génération différée une fois la transaction du checkout validée */
+    public void submitAfterCommit(Long orderId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            submit(orderId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                submit(orderId);
+            }
+        });
+    }
+
+    /** Reprend les commandes en attente : file pleine, redémarrage... */
+    @Scheduled(fixedDelayString = "${checkout.issuance.sweep-ms:5000}")
+    public void sweep() {
+        LocalDateTime before = LocalDateTime.now().minusSeconds(sweepDelaySeconds);
+        orderRepository.findIdsByStatusCreatedBefore(OrderStatus.PENDING_ISSUANCE, before)
+                .forEach(this::submit);
+    }
+
+    private void submit(Long orderId) {
+        if (!inFlight.add(orderId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    issueDeferred(orderId);
+                } catch (RuntimeException ex) {
+                    log.error("Ticket issuance failed for order {}, retried by the sweep", orderId, ex);
+                } finally {
+                    inFlight.remove(orderId);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            //queue full: the sweep will pick it up
+            inFlight.remove(orderId);
+            log.warn("Ticket issuance queue full, order {} deferred to the sweep", orderId);
+        }
+    }
+
+    private void issueDeferred(Long orderId) {
+        transactionTemplate.executeWithoutResult(s -> {
+            //row lock: only one node/thread issues a given order
+            Order order = orderRepository.findByIdForUpdate(orderId).orElse(null);
+            if (order == null || order.getStatus() != OrderStatus.PENDING_ISSUANCE) {
+                return;
+            }
+            List<OrderLine> lines = orderLineRepository.findByOrderIdWithOffer(orderId);
+            issueNow(order, order.getUser(), lines);
+        });
+    }
+}
@@ -0,0 +1,216 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.repository.TicketRepository;
+import com.ieolympicstickets.backend.util.BloomFilter;
+import com.ieolympicstickets.backend.util.FingerprintSet;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index en mémoire des QR (qrHash) pour le scan : par épreuve, un filtre de Bloom et un ensemble
+ * d'empreintes 64 bits portant l'état utilisé.
+ * <p>
+ * Un billet déjà utilisé est refusé sans requête (un billet ne redevient jamais valide) ;
+ * tous les autres vont en base (UPDATE conditionnel, qui fait foi), y compris un QR absent de
+ * l'index : il peut s'agir d'un billet émis par une autre instance depuis la dernière relecture.
+ * La mémoire occupée est publiée par la jauge tickets.scan_index.bytes et journalisée au chargement.
+ * <p>
+ * Chargé au démarrage ; tant qu'il ne l'est pas, tout passe par la base. Les billets émis ici y
+ * entrent à la validation de leur transaction, ceux émis par une autre instance à la relecture
+ * périodique (refresh-ms). Un billet scanné ailleurs est vu non utilisé ici, et la base tranche.
+ */
+@Service
+public class TicketScanIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(TicketScanIndex.class);
+    private static final int LOAD_BATCH = 10_000;
+
+    public enum Lookup { ABSENT, UNUSED, USED, UNKNOWN }
+
+    private final TicketRepository ticketRepository;
+    private final double falsePositiveRate;
+    private final long refreshOverlapMillis;
+    private final Map<Long, EventTickets> events = new ConcurrentHashMap<>();
+    private final Counter absent;
+    private volatile boolean ready;
+    //scheduler thread only
+    private Instant lastRefresh;
+
+    public TicketScanIndex(TicketRepository ticketRepository,
+                           MeterRegistry meterRegistry,
+                           @Value("${tickets.scan-index.false-positive-rate:0.01}") double falsePositiveRate,
+                           @Value("${tickets.scan-index.refresh-ms:5000}") long refreshMillis) {
+        this.ticketRepository = ticketRepository;
+        this.falsePositiveRate = falsePositiveRate;
+        //rows committed late (long issuance transactions) are still picked up
+        this.refreshOverlapMillis = refreshMillis + 60_000;
+        //QR not in the index: forged, or issued elsewhere since the last refresh; checked in the database
+        this.absent = meterRegistry.counter("tickets.scan_index.absent");
+        Gauge.builder("tickets.scan_index.entries", this, TicketScanIndex::entries).register(meterRegistry);
+        Gauge.builder("tickets.scan_index.bytes", this, TicketScanIndex::sizeInBytes).register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        Instant start = Instant.now();
+        for (Object[] row : ticketRepository.countByEvent()) {
+            long count = (Long) row[1];
+            events.put((Long) row[0], new EventTickets(count + count / 2 + 1024, falsePositiveRate));
+        }
+        long loaded = 0;
+        Long afterId = 0L;
+        List<Object[]> rows;
+        do {
+            rows = ticketRepository.findScanIndexPage(afterId, PageRequest.of(0, LOAD_BATCH));
+            for (Object[] row : rows) {
+                add((Long) row[3], (String) row[1], (Boolean) row[2]);
+                afterId = (Long) row[0];
+            }
+            loaded += rows.size();
+        } while (rows.size() == LOAD_BATCH);
+        lastRefresh = start;
+        ready = true;
+        long bytes = sizeInBytes();
+        log.info("Ticket scan index loaded: {} tickets, {} events, {} KB ({} bytes per ticket)",
+                loaded, events.size(), bytes / 1024, loaded == 0 ? 0 : bytes / loaded);
+    }
+
+    /** Billets émis par les autres instances */
+    @Scheduled(fixedDelayString = "${tickets.scan-index.refresh-ms:5000}",
+            initialDelayString = "${tickets.scan-index.refresh-ms:5000}")
+    public void refresh() {
+        if (!ready) {
+            return;
+        }
+        Instant start = Instant.now();
+        for (Object[] row : ticketRepository.findScanIndexCreatedSince(lastRefresh.minusMillis(refreshOverlapMillis))) {
+            add((Long) row[3], (String) row[1], (Boolean) row[2]);
+        }
+        lastRefresh = start;
+    }
+
+    /** État connu en mémoire ; UNKNOWN tant que l'index n'est pas chargé. Seul USED est définitif. */
+    public Lookup lookup(String qrHash) {
+        if (!ready) {
+            return Lookup.UNKNOWN;
+        }
+        long fingerprint = fingerprint(qrHash);
+        for (EventTickets tickets : events.values()) {
+            if (!tickets.bloom.mightContain(fingerprint)) {
+                continue;
+            }
+            int state = tickets.set.get(fingerprint);
+            if (state != FingerprintSet.ABSENT) {
+                return state == 1 ? Lookup.USED : Lookup.UNUSED;
+            }
+        }
+        absent.increment();
+        return Lookup.ABSENT;
+    }
+
+    /** Billets émis dans la transaction courante, ajoutés une fois celle-ci validée */
+    public void addAfterCommit(Long eventId, List<String> qrHashes) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            qrHashes.forEach(h -> add(eventId, h, false));
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                qrHashes.forEach(h -> add(eventId, h, false));
+            }
+        });
+    }
+
+    /** Billets passés à utilisés dans la transaction courante, marqués une fois celle-ci validée */
+    public void markUsedAfterCommit(Collection<String> qrHashes) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            qrHashes.forEach(this::markUsed);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                qrHashes.forEach(TicketScanIndex.this::markUsed);
+            }
+        });
+    }
+
+    private void markUsed(String qrHash) {
+        long fingerprint = fingerprint(qrHash);
+        for (EventTickets tickets : events.values()) {
+            if (tickets.bloom.mightContain(fingerprint) && tickets.set.setFlag(fingerprint)) {
+                return;
+            }
+        }
+    }
+
+    private void add(Long eventId, String qrHash, boolean used) {
+        events.computeIfAbsent(eventId, id -> new EventTickets(1024, falsePositiveRate))
+                .add(fingerprint(qrHash), used);
+    }
+
+    private long entries() {
+        return events.values().stream().mapToLong(t -> t.set.size()).sum();
+    }
+
+    private long sizeInBytes() {
+        return events.values().stream().mapToLong(t -> t.set.sizeInBytes() + t.bloom.sizeInBytes()).sum();
+    }
+
+    //FNV-1a 64 bits over the UTF-16 chars, then a finalizer: a collision only sends a scan to the database.
+    //Also the fingerprint of the gate feed (TicketFeedService): gate devices compute it the same way.
+    static long fingerprint(String qrHash) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < qrHash.length(); i++) {
+            h ^= qrHash.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    private static final class EventTickets {
+        private final FingerprintSet set;
+        private final double falsePositiveRate;
+        private volatile BloomFilter bloom;
+        private long bloomCapacity;
+
+        private EventTickets(long capacity, double falsePositiveRate) {
+            this.falsePositiveRate = falsePositiveRate;
+            this.set = new FingerprintSet((int) Math.min(Integer.MAX_VALUE / 2, capacity));
+            this.bloomCapacity = capacity;
+            this.bloom = new BloomFilter(capacity, falsePositiveRate);
+        }
+
+        private synchronized void add(long fingerprint, boolean used) {
+            set.add(fingerprint, used);
+            bloom.add(fingerprint);
+            if (set.size() > bloomCapacity) {
+                //the filter cannot grow: rebuilt twice as large from the fingerprints
+                bloomCapacity *= 2;
+                BloomFilter larger = new BloomFilter(bloomCapacity, falsePositiveRate);
+                set.forEach(larger::add);
+                bloom = larger;
+            }
+        }
+    }
+}
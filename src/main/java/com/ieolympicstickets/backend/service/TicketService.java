@@ -4,11 +4,20 @@ import com.ieolympicstickets.backend.exceptions.TicketNotFoundException;
 import com.ieolympicstickets.backend.model.Ticket;
 import com.ieolympicstickets.backend.model.User;
 import com.ieolympicstickets.backend.repository.TicketRepository;
+import com.ieolympicstickets.backend.repository.projection.TicketSummary;
+import com.ieolympicstickets.backend.util.KeysetPage;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Service pour la gestion et la validation des billets.
@@ -17,9 +26,14 @@ import java.util.List;
 public class TicketService {
 
         private final TicketRepository ticketRepository;
+        private final SignedTicketService signedTicketService;
+        private final TicketScanIndex ticketScanIndex;
 
-        public TicketService(TicketRepository ticketRepository) {
+        public TicketService(TicketRepository ticketRepository, SignedTicketService signedTicketService,
+                             TicketScanIndex ticketScanIndex) {
                 this.ticketRepository = ticketRepository;
+                this.signedTicketService = signedTicketService;
+                this.ticketScanIndex = ticketScanIndex;
         }
 
         /**
@@ -32,24 +46,152 @@ public class TicketService {
                 return ticketRepository.findByUser(user);
         }
 
+        /**
+         * Billets de l'utilisateur triés par date d'épreuve en base, à partir du curseur (null = première page).
+         * Une seule requête : offre, épreuve et commande sont jointes.
+         */
         @Transactional(readOnly = true)
-        public Ticket getByIdAndUser(Long ticketId, User user) {
-                return ticketRepository.findById(ticketId)
-                        .filter(t -> t.getUser().getId().equals(user.getId()))
+        public KeysetPage<TicketSummary> findByUser(User user, KeysetPage.Cursor after, int limit) {
+                PageRequest rows = PageRequest.of(0, limit + 1);
+                List<TicketSummary> tickets = after == null
+                        ? ticketRepository.findFirstPageByUser(user, rows)
+                        : ticketRepository.findPageByUserAfter(user, after.at(), after.id(), rows);
+                return KeysetPage.of(tickets, limit, t -> new KeysetPage.Cursor(t.eventDateTime(), t.ticketId()));
+        }
+
+        @Transactional(readOnly = true)
+        public TicketSummary getByIdAndUser(Long ticketId, User user) {
+                return ticketRepository.findSummaryByIdAndUser(ticketId, user)
                         .orElseThrow(() -> new AccessDeniedException("Ticket not yours"));
         }
 
-        //QR scan
+        /** QR signé du billet, vérifiable hors ligne par les portiques */
+        @Transactional(readOnly = true)
+        public String signedQr(Long ticketId, User user) {
+                TicketSummary ticket = getByIdAndUser(ticketId, user);
+                return signedTicketService.sign(ticket.ticketId(), ticket.eventId(), ticket.offerId());
+        }
+
+        /**
+         * Scan d'un QR (qrHash ou QR signé) : un seul UPDATE conditionnel (used = false), la base arbitre
+         * deux tourniquets qui scannent le même QR au même instant. Un qrHash déjà utilisé d'après
+         * {@link TicketScanIndex} est tranché sans requête ; un qrHash absent de l'index va en base,
+         * il peut venir d'une autre instance.
+         * @return true si le billet vient d'être validé, false s'il l'était déjà
+         */
         @Transactional
         public boolean scanByHash(String qrHash) {
-                Ticket ticket = ticketRepository.findByQrHash(qrHash)
-                        .orElseThrow(() -> new TicketNotFoundException("QR invalide : " + qrHash));
-
-                if (ticket.isUsed()) {
+                if (SignedTicketService.isSigned(qrHash)) {
+                        SignedTicketService.SignedTicket signed = signedTicketService.verify(qrHash);
+                        if (signed == null) {
+                                throw new TicketNotFoundException("QR signé invalide");
+                        }
+                        if (ticketRepository.markUsedById(signed.ticketId(), Instant.now()) == 1) {
+                                //a later scan of its qrHash is then refused from memory
+                                ticketRepository.findQrHashById(signed.ticketId())
+                                        .ifPresent(hash -> ticketScanIndex.markUsedAfterCommit(List.of(hash)));
+                                return true;
+                        }
+                        if (!ticketRepository.existsById(signed.ticketId())) {
+                                throw new TicketNotFoundException("QR signé, billet inconnu : " + signed.ticketId());
+                        }
                         return false;
                 }
-                ticket.setUsed(true);
-                ticketRepository.save(ticket);
-                return true;
+                if (ticketScanIndex.lookup(qrHash) == TicketScanIndex.Lookup.USED) {
+                        return false;
+                }
+                if (ticketRepository.markUsed(qrHash, Instant.now()) == 1) {
+                        ticketScanIndex.markUsedAfterCommit(List.of(qrHash));
+                        return true;
+                }
+                //rare path: tell a used ticket from an unknown one
+                if (!ticketRepository.existsByQrHash(qrHash)) {
+                        throw new TicketNotFoundException("QR invalide : " + qrHash);
+                }
+                return false;
+        }
+
+        /**
+         * Scans tamponnés par un portique, ou rejoués par un portique hors ligne (QR signés),
+         * en une lecture verrouillée par type de QR plus un UPDATE, quel que soit leur nombre.
+         * Un même billet présent deux fois dans le lot n'est validé qu'à sa première occurrence ;
+         * pour un scan hors ligne, ALREADY_USED signale une double entrée déjà laissée passer.
+         * @return un résultat par QR, dans l'ordre reçu
+         */
+        @Transactional
+        public List<ScanResult> scanBatch(List<String> qrHashes) {
+                if (qrHashes.isEmpty()) {
+                        return List.of();
+                }
+                Map<String, SignedTicketService.SignedTicket> signed = new HashMap<>();
+                Set<String> plainHashes = new HashSet<>();
+                Set<String> knownUsed = new HashSet<>();
+                for (String qr : qrHashes) {
+                        if (SignedTicketService.isSigned(qr)) {
+                                SignedTicketService.SignedTicket ticket = signedTicketService.verify(qr);
+                                if (ticket != null) {
+                                        signed.put(qr, ticket);
+                                }
+                        } else if (ticketScanIndex.lookup(qr) == TicketScanIndex.Lookup.USED) {
+                                //used tickets are answered without being part of the locked read
+                                knownUsed.add(qr);
+                        } else {
+                                plainHashes.add(qr);
+                        }
+                }
+                Map<String, Ticket> byHash = new HashMap<>();
+                if (!plainHashes.isEmpty()) {
+                        for (Ticket ticket : ticketRepository.findByQrHashInForUpdate(plainHashes)) {
+                                byHash.put(ticket.getQrHash(), ticket);
+                        }
+                }
+                Map<Long, Ticket> byId = new HashMap<>();
+                if (!signed.isEmpty()) {
+                        Set<Long> ids = new HashSet<>();
+                        signed.values().forEach(t -> ids.add(t.ticketId()));
+                        for (Ticket ticket : ticketRepository.findByIdInForUpdate(ids)) {
+                                byId.put(ticket.getId(), ticket);
+                        }
+                }
+                List<ScanResult> results = new ArrayList<>(qrHashes.size());
+                Set<Long> toMark = new HashSet<>();
+                List<String> markedHashes = new ArrayList<>();
+                for (String qr : qrHashes) {
+                        Ticket ticket;
+                        if (SignedTicketService.isSigned(qr)) {
+                                SignedTicketService.SignedTicket verified = signed.get(qr);
+                                if (verified == null) {
+                                        results.add(new ScanResult(qr, ScanResult.INVALID));
+                                        continue;
+                                }
+                                ticket = byId.get(verified.ticketId());
+                        } else if (knownUsed.contains(qr)) {
+                                results.add(new ScanResult(qr, ScanResult.ALREADY_USED));
+                                continue;
+                        } else {
+                                ticket = byHash.get(qr);
+                        }
+                        if (ticket == null) {
+                                results.add(new ScanResult(qr, ScanResult.NOT_FOUND));
+                        } else if (ticket.isUsed() || !toMark.add(ticket.getId())) {
+                                results.add(new ScanResult(qr, ScanResult.ALREADY_USED));
+                        } else {
+                                markedHashes.add(ticket.getQrHash());
+                                results.add(new ScanResult(qr, ScanResult.SCANNED));
+                        }
+                }
+                if (!toMark.isEmpty()) {
+                        ticketRepository.markUsedByIdIn(toMark, Instant.now());
+                        ticketScanIndex.markUsedAfterCommit(markedHashes);
+                }
+                return results;
+        }
+
+        /** @param status SCANNED, ALREADY_USED, NOT_FOUND ou INVALID (QR signé falsifié ou d'une autre clé) */
+        public record ScanResult(String qrHash, String status) {
+                public static final String SCANNED = "SCANNED";
+                public static final String ALREADY_USED = "ALREADY_USED";
+                public static final String NOT_FOUND = "NOT_FOUND";
+                public static final String INVALID = "INVALID";
         }
 }
\ No newline at end of file
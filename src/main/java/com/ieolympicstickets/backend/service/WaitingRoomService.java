@@ -0,0 +1,332 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.model.Event;
+import com.ieolympicstickets.backend.repository.EventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Salle d'attente par événement, pour l'ouverture des ventes.
+ * <p>
+ * Chaque arrivant reçoit un numéro (compteur de l'événement) dans un jeton de file signé ;
+ * un curseur d'admission avance de waitingRoomRate numéros par seconde. Quand le curseur a
+ * dépassé son numéro, le client échange son jeton de file contre un jeton d'admission, exigé
+ * pour remplir le panier et le valider. Aucun état par client côté serveur : deux compteurs
+ * par événement, quel que soit le nombre de personnes en attente.
+ * <p>
+ * Les deux jetons sont liés au porteur (utilisateur connecté, sinon X-Session-Id) : ils ne servent
+ * à personne d'autre. Un numéro de file ne s'échange qu'une fois contre un jeton d'admission.
+ * <p>
+ * Les compteurs sont propres à chaque instance : derrière un load balancer, le débit
+ * d'admission total est waitingRoomRate x nombre d'instances, et les clients doivent rester
+ * sur la même instance. Ils repartent de zéro au redémarrage : les jetons de file émis avant
+ * (ou par une autre instance) sont refusés et le client rejoint la file à nouveau. Les jetons
+ * d'admission déjà délivrés restent valables jusqu'à leur expiration.
+ */
+@Service
+public class WaitingRoomService {
+
+    private static final Logger log = LoggerFactory.getLogger(WaitingRoomService.class);
+    private static final String QUEUE = "q";
+    private static final String ADMISSION = "a";
+    private static final Base64.Encoder B64 = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder B64D = Base64.getUrlDecoder();
+    //queue tokens of another run (restart) or instance are refused: their numbers mean nothing here
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36)
+            + Integer.toString(new SecureRandom().nextInt(1 << 20), 36);
+
+    private final EventRepository eventRepository;
+    private final SecretKeySpec key;
+    private final long admissionTtlSeconds;
+    private final Map<Long, Room> rooms = new ConcurrentHashMap<>();
+    private final ThreadLocal<Mac> macs;
+    //ticker thread only
+    private long lastTick = System.nanoTime();
+
+    public WaitingRoomService(EventRepository eventRepository,
+                              @Value("${waiting-room.secret:${jwt.secret}}") String base64Secret,
+                              @Value("${waiting-room.admission-ttl-seconds:900}") long admissionTtlSeconds) {
+        this.eventRepository = eventRepository;
+        this.key = new SecretKeySpec(Base64.getDecoder().decode(base64Secret.trim()), "HmacSHA256");
+        this.admissionTtlSeconds = admissionTtlSeconds;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /** Rate par événement relu en base : prend en compte les modifications faites sur une autre instance */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${waiting-room.refresh-ms:5000}", initialDelayString = "${waiting-room.refresh-ms:5000}")
+    public void refresh() {
+        Set<Long> active = new HashSet<>();
+        for (Object[] row : eventRepository.findWaitingRoomRates()) {
+            Long eventId = (Long) row[0];
+            setRate(eventId, (Integer) row[1]);
+            active.add(eventId);
+        }
+        rooms.keySet().retainAll(active);
+    }
+
+    /** À appeler après l'enregistrement d'un événement : ouvre, ajuste ou ferme sa salle d'attente */
+    public void onEventSaved(Event event) {
+        setRate(event.getId(), event.getWaitingRoomRate());
+    }
+
+    public void onEventDeleted(Long eventId) {
+        rooms.remove(eventId);
+    }
+
+    public boolean isActive(Long eventId) {
+        return rooms.containsKey(eventId);
+    }
+
+    /** Avance le curseur d'admission de chaque salle */
+    @Scheduled(fixedRateString = "${waiting-room.tick-ms:250}")
+    public void tick() {
+        long now = System.nanoTime();
+        double seconds = (now - lastTick) / 1e9;
+        lastTick = now;
+        rooms.values().forEach(room -> room.advance(seconds));
+    }
+
+    /**
+     * Entrée dans la file de l'événement.
+     * Sans salle d'attente active, l'admission est immédiate et sans jeton.
+     * @param email     utilisateur connecté, ou null
+     * @param sessionId X-Session-Id d'un invité, ou null
+     * @throws ResponseStatusException 400 si la file est active et le client anonyme
+     */
+    public QueueStatus join(Long eventId, String email, String sessionId) {
+        Room room = rooms.get(eventId);
+        if (room == null) {
+            return new QueueStatus(eventId, true, null, null, null, 0, 0);
+        }
+        List<String> holders = holders(email, sessionId);
+        if (holders.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Connectez-vous ou envoyez X-Session-Id pour rejoindre la file");
+        }
+        String holder = holders.get(0);
+        long number = room.issued.incrementAndGet();
+        String queueToken = sign(QUEUE + ":" + eventId + ":" + number + ":" + EPOCH + ":" + holder);
+        return status(eventId, room, number, holder, queueToken);
+    }
+
+    /**
+     * Position dans la file, ou jeton d'admission si le tour est arrivé (une seule fois par numéro).
+     * @throws ResponseStatusException 400 si le jeton de file est invalide ou antérieur au redémarrage,
+     *                                 403 s'il appartient à un autre client, 409 si l'admission a déjà été délivrée
+     */
+    public QueueStatus status(Long eventId, String queueToken, String email, String sessionId) {
+        Room room = rooms.get(eventId);
+        if (room == null) {
+            return new QueueStatus(eventId, true, null, null, null, 0, 0);
+        }
+        String[] parts = verify(queueToken);
+        if (parts == null || parts.length != 5 || !QUEUE.equals(parts[0])
+                || !parts[1].equals(String.valueOf(eventId))) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Jeton de file invalide");
+        }
+        if (!EPOCH.equals(parts[3])) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Jeton de file expiré (redémarrage du service) : rejoignez la file à nouveau");
+        }
+        if (!holders(email, sessionId).contains(parts[4])) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Ce jeton de file appartient à un autre client");
+        }
+        return status(eventId, room, Long.parseLong(parts[2]), parts[4], queueToken);
+    }
+
+    /**
+     * Vérifie qu'un jeton d'admission valide, délivré à ce client, est présenté pour chaque
+     * événement en salle d'attente.
+     * @param admissionTokens jetons séparés par des virgules (un par événement), peut être null
+     * @param email           utilisateur connecté, ou null
+     * @param sessionId       session invitée du panier, ou null
+     * @throws ResponseStatusException 403 s'il manque une admission
+     */
+    public void requireAdmission(Collection<Long> eventIds, String admissionTokens, String email, String sessionId) {
+        List<String> holders = null;
+        for (Long eventId : eventIds) {
+            if (!rooms.containsKey(eventId)) {
+                continue;
+            }
+            if (holders == null) {
+                holders = holders(email, sessionId);
+            }
+            if (!isAdmitted(eventId, admissionTokens, holders)) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN, String.format(
+                        "File d'attente active pour l'événement %d : rejoignez /api/waiting-room/%d/join",
+                        eventId, eventId));
+            }
+        }
+    }
+
+    //admission token: a:eventId:queueNumber:holder:expiresAt
+    private boolean isAdmitted(Long eventId, String admissionTokens, List<String> holders) {
+        if (admissionTokens == null || holders.isEmpty()) {
+            return false;
+        }
+        long now = Instant.now().getEpochSecond();
+        for (String token : admissionTokens.split(",")) {
+            String[] parts = verify(token.trim());
+            if (parts != null && parts.length == 5 && ADMISSION.equals(parts[0])
+                    && parts[1].equals(String.valueOf(eventId))
+                    && Long.parseLong(parts[2]) > 0
+                    && holders.contains(parts[3])
+                    && Long.parseLong(parts[4]) > now) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private QueueStatus status(Long eventId, Room room, long number, String holder, String queueToken) {
+        long position = number - room.admitted;
+        if (position <= 0) {
+            if (!room.exchange(number)) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "Admission déjà délivrée pour ce numéro de file");
+            }
+            long expiresAt = Instant.now().getEpochSecond() + admissionTtlSeconds;
+            String admission = sign(ADMISSION + ":" + eventId + ":" + number + ":" + holder + ":" + expiresAt);
+            return new QueueStatus(eventId, true, null, admission, expiresAt, 0, 0);
+        }
+        long wait = (long) Math.ceil(position / (double) room.rate);
+        return new QueueStatus(eventId, false, queueToken, null, null, position, wait);
+    }
+
+    private void setRate(Long eventId, Integer rate) {
+        if (rate == null || rate <= 0) {
+            if (rooms.remove(eventId) != null) {
+                log.info("Waiting room closed for event {}", eventId);
+            }
+            return;
+        }
+        rooms.computeIfAbsent(eventId, id -> {
+            log.info("Waiting room opened for event {} ({} admissions/s)", id, rate);
+            return new Room();
+        }).rate = rate;
+    }
+
+    //identities a token may be bound to, the user first: hashed, so no email or session id in the tokens
+    private static List<String> holders(String email, String sessionId) {
+        List<String> holders = new ArrayList<>(2);
+        if (email != null && !email.isBlank()) {
+            holders.add(hash("u:" + email));
+        }
+        if (sessionId != null && !sessionId.isBlank()) {
+            holders.add(hash("s:" + sessionId));
+        }
+        return holders;
+    }
+
+    private static String hash(String holder) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(holder.getBytes(StandardCharsets.UTF_8));
+            return B64.encodeToString(Arrays.copyOf(digest, 12));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //payload.signature, both base64url
+    private String sign(String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        return B64.encodeToString(bytes) + "." + B64.encodeToString(macs.get().doFinal(bytes));
+    }
+
+    //payload fields, or null if the token is malformed or forged
+    private String[] verify(String token) {
+        if (token == null) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        try {
+            byte[] payload = B64D.decode(token.substring(0, dot));
+            byte[] signature = B64D.decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(macs.get().doFinal(payload), signature)) {
+                return null;
+            }
+            return new String(payload, StandardCharsets.UTF_8).split(":");
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static final class Room {
+        //last number handed out
+        private final AtomicLong issued = new AtomicLong();
+        //numbers up to this one are admitted; written by the ticker only
+        private volatile long admitted;
+        private volatile int rate;
+        //fraction of an admission carried to the next tick
+        private double credit;
+        //queue numbers already exchanged for an admission token, one bit each
+        private final BitSet exchanged = new BitSet();
+
+        private synchronized boolean exchange(long number) {
+            int index = (int) number;
+            if (exchanged.get(index)) {
+                return false;
+            }
+            exchanged.set(index);
+            return true;
+        }
+
+        private void advance(double seconds) {
+            credit += rate * seconds;
+            long whole = (long) credit;
+            credit -= whole;
+            //an idle room keeps at most one second of admissions in advance
+            long next = Math.min(admitted + whole, issued.get() + rate);
+            if (next < admitted + whole) {
+                credit = 0;
+            }
+            admitted = Math.max(admitted, next);
+        }
+    }
+
+    /**
+     * @param queueToken     à présenter pour suivre sa position (null une fois admis)
+     * @param admissionToken à présenter dans X-Admission-Token (null tant que pas admis)
+     */
+    public record QueueStatus(Long eventId, boolean admitted, String queueToken, String admissionToken,
+                              Long admissionExpiresAt, long position, long estimatedWaitSeconds) {}
+}
@@ -0,0 +1,67 @@
+package com.ieolympicstickets.backend.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Base45 (RFC 9285) : alphabet du mode alphanumérique des QR codes, plus dense qu'un QR en base64.
+ * Deux octets donnent trois caractères, un octet final en donne deux.
+ */
+public final class Base45 {
+
+    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+    private static final int[] VALUES = new int[128];
+
+    static {
+        Arrays.fill(VALUES, -1);
+        for (int i = 0; i < ALPHABET.length(); i++) {
+            VALUES[ALPHABET.charAt(i)] = i;
+        }
+    }
+
+    private Base45() {
+    }
+
+    public static String encode(byte[] bytes) {
+        StringBuilder out = new StringBuilder((bytes.length + 1) / 2 * 3);
+        for (int i = 0; i + 1 < bytes.length; i += 2) {
+            int n = ((bytes[i] & 0xff) << 8) | (bytes[i + 1] & 0xff);
+            out.append(ALPHABET.charAt(n % 45)).append(ALPHABET.charAt(n / 45 % 45)).append(ALPHABET.charAt(n / 2025));
+        }
+        if (bytes.length % 2 == 1) {
+            int n = bytes[bytes.length - 1] & 0xff;
+            out.append(ALPHABET.charAt(n % 45)).append(ALPHABET.charAt(n / 45));
+        }
+        return out.toString();
+    }
+
+    /** @throws IllegalArgumentException si le texte n'est pas du base45 valide */
+    public static byte[] decode(String text) {
+        if (text.length() % 3 == 1) {
+            throw new IllegalArgumentException("Longueur base45 invalide");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(text.length() / 3 * 2 + 1);
+        for (int i = 0; i < text.length(); i += 3) {
+            int c = value(text.charAt(i)) + value(text.charAt(i + 1)) * 45;
+            if (i + 2 < text.length()) {
+                c += value(text.charAt(i + 2)) * 2025;
+                if (c > 0xffff) {
+                    throw new IllegalArgumentException("Bloc base45 invalide");
+                }
+                out.write(c >> 8);
+            } else if (c > 0xff) {
+                throw new IllegalArgumentException("Bloc base45 invalide");
+            }
+            out.write(c & 0xff);
+        }
+        return out.toByteArray();
+    }
+
+    private static int value(char c) {
+        int v = c < 128 ? VALUES[c] : -1;
+        if (v < 0) {
+            throw new IllegalArgumentException("Caractère base45 invalide : " + c);
+        }
+        return v;
+    }
+}
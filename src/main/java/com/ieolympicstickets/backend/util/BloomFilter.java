@@ -0,0 +1,50 @@
+package com.ieolympicstickets.backend.util;
+
+/**
+ * Filtre de Bloom sur des empreintes 64 bits : "absent" est certain, "présent" peut être un faux positif.
+ * Les k positions sont dérivées de l'empreinte par double hachage, sans rehacher la clé.
+ * Lectures sans verrou ; un ajout concurrent peut ne pas encore être visible.
+ */
+public class BloomFilter {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashes;
+
+    /**
+     * @param expectedEntries   nombre d'entrées prévu
+     * @param falsePositiveRate taux de faux positifs visé à ce nombre d'entrées (ex. 0.01)
+     */
+    public BloomFilter(long expectedEntries, double falsePositiveRate) {
+        long n = Math.max(1, expectedEntries);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bits = new long[(int) Math.max(1, (m + 63) >>> 6)];
+        this.bitCount = (long) bits.length << 6;
+        this.hashes = (int) Math.max(1, Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    public synchronized void add(long fingerprint) {
+        long h1 = fingerprint;
+        long h2 = Long.rotateLeft(fingerprint, 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(long fingerprint) {
+        long h1 = fingerprint;
+        long h2 = Long.rotateLeft(fingerprint, 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long sizeInBytes() {
+        return (long) bits.length * Long.BYTES;
+    }
+}
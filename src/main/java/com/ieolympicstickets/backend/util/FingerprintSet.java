@@ -0,0 +1,108 @@
+package com.ieolympicstickets.backend.util;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Ensemble d'empreintes 64 bits avec un drapeau par entrée, en adressage ouvert (sondage linéaire)
+ * dans un seul long[] : 8 octets par entrée, environ 11 avec la réserve de remplissage (0,75).
+ * Le bit de poids faible de chaque case porte le drapeau, l'empreinte utilise les 63 autres ;
+ * 0 marque une case vide. Pas de suppression.
+ * Écritures synchronisées, lectures sans verrou : une lecture concurrente peut manquer un ajout récent.
+ */
+public class FingerprintSet {
+
+    public static final int ABSENT = -1;
+
+    private volatile long[] table;
+    private int size;
+
+    public FingerprintSet(int expectedEntries) {
+        this.table = new long[tableSize(Math.max(16, expectedEntries))];
+    }
+
+    /** Ajoute l'empreinte si elle est absente ; un drapeau déjà levé le reste */
+    public synchronized void add(long fingerprint, boolean flag) {
+        long key = key(fingerprint);
+        long[] t = table;
+        int slot = find(t, key);
+        if (t[slot] != 0) {
+            t[slot] |= flag ? 1 : 0;
+            return;
+        }
+        t[slot] = key | (flag ? 1 : 0);
+        if (++size > t.length * 3L / 4) {
+            resize();
+        }
+    }
+
+    /** @return true si l'empreinte était présente (drapeau levé, ou déjà levé) */
+    public synchronized boolean setFlag(long fingerprint) {
+        long[] t = table;
+        int slot = find(t, key(fingerprint));
+        if (t[slot] == 0) {
+            return false;
+        }
+        t[slot] |= 1;
+        return true;
+    }
+
+    /** @return {@link #ABSENT}, 0 (drapeau baissé) ou 1 (drapeau levé) */
+    public int get(long fingerprint) {
+        long[] t = table;
+        long entry = t[find(t, key(fingerprint))];
+        return entry == 0 ? ABSENT : (int) (entry & 1);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public long sizeInBytes() {
+        return (long) table.length * Long.BYTES;
+    }
+
+    /** Parcourt les empreintes (drapeau retiré) */
+    public synchronized void forEach(LongConsumer action) {
+        for (long entry : table) {
+            if (entry != 0) {
+                action.accept(entry & ~1L);
+            }
+        }
+    }
+
+    private void resize() {
+        long[] old = table;
+        long[] t = new long[old.length * 2];
+        for (long entry : old) {
+            if (entry != 0) {
+                t[find(t, entry & ~1L)] = entry;
+            }
+        }
+        table = t;
+    }
+
+    //slot holding the key, or the empty slot where it would go
+    private static int find(long[] t, long key) {
+        int mask = t.length - 1;
+        int slot = (int) (mix(key) & mask);
+        while (t[slot] != 0 && (t[slot] & ~1L) != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long key(long fingerprint) {
+        long key = fingerprint & ~1L;
+        return key == 0 ? 2 : key;
+    }
+
+    private static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        return x ^ (x >>> 33);
+    }
+
+    private static int tableSize(int expectedEntries) {
+        return Integer.highestOneBit((int) Math.min(1 << 30, expectedEntries * 4L / 3 + 1) - 1) << 1;
+    }
+}
@@ -0,0 +1,91 @@
+package com.ieolympicstickets.backend.util;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hashed timer wheel : un seul tick périodique pour des millions d'échéances,
+ * au lieu d'une tâche planifiée par échéance.
+ * <p>
+ * {@link #schedule} peut être appelé depuis n'importe quel thread ;
+ * {@link #advance} doit toujours être appelé par le même thread (le ticker).
+ * Pas d'annulation : le consommateur vérifie lui-même qu'une échéance est toujours d'actualité.
+ */
+public class HashedTimerWheel<T> {
+
+    private final long tickNanos;
+    private final int mask;
+    private final List<Entry<T>>[] buckets;
+    //new timers, moved into the buckets by the ticker thread
+    private final Queue<Entry<T>> inbox = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong size = new AtomicLong();
+    //next tick to process, ticker thread only
+    private long tick;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public HashedTimerWheel(Duration tickDuration, int wheelSize) {
+        this.tickNanos = tickDuration.toNanos();
+        int n = wheelSize <= 1 ? 1 : Integer.highestOneBit(wheelSize - 1) << 1;
+        this.mask = n - 1;
+        this.buckets = new List[n];
+        for (int i = 0; i < n; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+    }
+
+    public void schedule(T payload, Instant deadline) {
+        long delay = Math.max(0, Duration.between(Instant.now(), deadline).toNanos());
+        schedule(payload, delay, TimeUnit.NANOSECONDS);
+    }
+
+    public void schedule(T payload, long delay, TimeUnit unit) {
+        long elapsed = System.nanoTime() - startNanos + unit.toNanos(delay);
+        //round up: a timer never fires early
+        inbox.add(new Entry<>(payload, (elapsed + tickNanos - 1) / tickNanos));
+        size.incrementAndGet();
+    }
+
+    /** Nombre d'échéances en attente */
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * Traite tous les ticks écoulés depuis le dernier appel.
+     * @return les éléments arrivés à échéance
+     */
+    public List<T> advance() {
+        long target = (System.nanoTime() - startNanos) / tickNanos;
+        List<T> expired = new ArrayList<>();
+        while (tick <= target) {
+            for (Entry<T> e = inbox.poll(); e != null; e = inbox.poll()) {
+                buckets[(int) (Math.max(e.deadlineTick, tick) & mask)].add(e);
+            }
+            int idx = (int) (tick & mask);
+            if (!buckets[idx].isEmpty()) {
+                List<Entry<T>> remaining = new ArrayList<>();
+                for (Entry<T> e : buckets[idx]) {
+                    //entries further than one turn stay for the next rounds
+                    if (e.deadlineTick <= tick) {
+                        expired.add(e.payload);
+                    } else {
+                        remaining.add(e);
+                    }
+                }
+                buckets[idx] = remaining;
+            }
+            tick++;
+        }
+        size.addAndGet(-expired.size());
+        return expired;
+    }
+
+    private record Entry<T>(T payload, long deadlineTick) {}
+}
@@ -0,0 +1,113 @@
+package com.ieolympicstickets.backend.util;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Mémorise le résultat d'une opération par clé d'idempotence.
+ * <p>
+ * Le premier appel exécute l'opération ; les appels suivants avec la même clé reçoivent
+ * le même résultat, et ceux qui arrivent pendant l'exécution attendent sa fin au lieu
+ * de la relancer. Les entrées expirent après le TTL ; au-delà de maxEntries les plus
+ * anciennes sont évincées. Une opération en échec (exception) n'est pas mémorisée.
+ */
+public class IdempotencyStore<V> {
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    //insertion order == expiry order (same TTL for every entry)
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>();
+
+    public IdempotencyStore(Duration ttl, int maxEntries) {
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param fingerprint empreinte de la requête : une clé réutilisée pour une autre requête est refusée
+     * @param wait        attente maximale d'une exécution concurrente avec la même clé
+     * @throws KeyReuseException si la clé a déjà servi pour une autre empreinte
+     * @throws TimeoutException  si l'exécution concurrente ne s'est pas terminée à temps
+     */
+    public V execute(String key, String fingerprint, Duration wait, Supplier<V> operation)
+            throws TimeoutException {
+        Entry<V> mine = new Entry<>(fingerprint, new CompletableFuture<>(), System.nanoTime() + ttlNanos);
+        Entry<V> existing;
+        synchronized (entries) {
+            evict(System.nanoTime());
+            existing = entries.putIfAbsent(key, mine);
+        }
+        if (existing != null) {
+            if (!existing.fingerprint.equals(fingerprint)) {
+                throw new KeyReuseException(key);
+            }
+            return await(existing.result, wait);
+        }
+        try {
+            V value = operation.get();
+            mine.result.complete(value);
+            return value;
+        } catch (RuntimeException | Error ex) {
+            //let the client retry with the same key
+            synchronized (entries) {
+                entries.remove(key, mine);
+            }
+            mine.result.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void evict(long now) {
+        Iterator<Entry<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry<V> e = it.next();
+            boolean expired = e.expiresAt - now <= 0;
+            if (!expired && entries.size() < maxEntries) {
+                break;
+            }
+            //in-flight entries are never dropped: their waiters still need the result
+            if (e.result.isDone()) {
+                it.remove();
+            }
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> result, Duration wait) throws TimeoutException {
+        try {
+            return result.get(wait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("Interrupted while waiting for the first request");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private record Entry<V>(String fingerprint, CompletableFuture<V> result, long expiresAt) {}
+
+    /** La clé a déjà été utilisée pour une requête différente */
+    public static class KeyReuseException extends RuntimeException {
+        public KeyReuseException(String key) {
+            super("Idempotency key already used for another request: " + key);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.ieolympicstickets.backend.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * Index inversé en mémoire, recherche par préfixe.
+ * <p>
+ * Les termes sont triés (skip list) : les termes commençant par un préfixe forment une plage
+ * contiguë. Une requête de plusieurs mots est un ET : le mot le plus long donne les candidats,
+ * les autres sont vérifiés sur les termes de chaque candidat.
+ * Écritures sérialisées, lectures sans verrou : une lecture concurrente d'une mise à jour
+ * peut voir un document à moitié réindexé, sans autre conséquence.
+ */
+public class InvertedIndex {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "au", "aux", "d", "de", "des", "du", "en", "et", "l", "la", "le", "les",
+            "pour", "par", "sur", "un", "une", "the", "of");
+
+    private final NavigableMap<String, Set<Long>> postings = new ConcurrentSkipListMap<>();
+    private final Map<Long, Set<String>> termsByDoc = new ConcurrentHashMap<>();
+
+    /** (Ré)indexe un document ; les textes null sont ignorés */
+    public synchronized void put(Long id, String... texts) {
+        Set<String> terms = new HashSet<>();
+        for (String text : texts) {
+            for (String token : tokenize(text)) {
+                if (!STOP_WORDS.contains(token)) {
+                    terms.add(token);
+                }
+            }
+        }
+        Set<String> previous = termsByDoc.put(id, Set.copyOf(terms));
+        if (previous != null) {
+            for (String term : previous) {
+                if (!terms.contains(term)) {
+                    unlink(term, id);
+                }
+            }
+        }
+        for (String term : terms) {
+            postings.computeIfAbsent(term, t -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    public synchronized void remove(Long id) {
+        Set<String> previous = termsByDoc.remove(id);
+        if (previous != null) {
+            previous.forEach(term -> unlink(term, id));
+        }
+    }
+
+    public synchronized void clear() {
+        postings.clear();
+        termsByDoc.clear();
+    }
+
+    /** Documents dont chaque mot de la requête est le préfixe d'un terme ; vide si la requête n'a aucun mot */
+    public Set<Long> search(String query) {
+        List<String> words = new ArrayList<>(tokenize(query));
+        if (words.size() > 1) {
+            words.removeIf(STOP_WORDS::contains);
+        }
+        if (words.isEmpty()) {
+            return Set.of();
+        }
+        //the longest prefix matches the fewest terms
+        words.sort(Comparator.comparingInt(String::length).reversed());
+        Set<Long> candidates = new HashSet<>();
+        for (Set<Long> ids : postings.subMap(words.get(0), true, words.get(0) + Character.MAX_VALUE, false).values()) {
+            candidates.addAll(ids);
+        }
+        for (String word : words.subList(1, words.size())) {
+            candidates.removeIf(id -> !hasPrefix(termsByDoc.get(id), word));
+        }
+        return candidates;
+    }
+
+    public int size() {
+        return termsByDoc.size();
+    }
+
+    /** Minuscules sans accents : "Épreuve" et "epreuve" sont le même terme */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /** Mots normalisés ; l'apostrophe sépare ("l'Arena" donne "l" et "arena") */
+    public static Collection<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token : SEPARATORS.split(normalize(text))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private void unlink(String term, Long id) {
+        postings.computeIfPresent(term, (t, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private static boolean hasPrefix(Set<String> terms, String prefix) {
+        if (terms == null) {
+            return false;
+        }
+        for (String term : terms) {
+            if (term.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
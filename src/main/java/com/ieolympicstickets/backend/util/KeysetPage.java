@@ -0,0 +1,65 @@
+package com.ieolympicstickets.backend.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Page d'une pagination par clé (keyset) : la page suivante reprend après la dernière clé
+ * lue (WHERE clé > curseur ORDER BY clé LIMIT n), sans OFFSET à parcourir.
+ * @param nextCursor curseur opaque de la page suivante, null si c'est la dernière
+ */
+public record KeysetPage<T>(List<T> items, String nextCursor) {
+
+    /**
+     * @param rows  lignes lues avec une limite de limit + 1 : la ligne en trop indique qu'il y a une suite
+     * @param keyOf clé de tri d'une ligne
+     */
+    public static <T> KeysetPage<T> of(List<T> rows, int limit, Function<T, Cursor> keyOf) {
+        if (rows.size() <= limit) {
+            return new KeysetPage<>(rows, null);
+        }
+        List<T> items = rows.subList(0, limit);
+        return new KeysetPage<>(List.copyOf(items), keyOf.apply(items.get(limit - 1)).encode());
+    }
+
+    public <R> KeysetPage<R> map(Function<T, R> mapper) {
+        return new KeysetPage<>(items.stream().map(mapper).toList(), nextCursor);
+    }
+
+    /**
+     * Clé de tri : (date, id) ou id seul. L'id départage les dates égales, le tri est stable.
+     */
+    public record Cursor(LocalDateTime at, Long id) {
+
+        public static Cursor of(Long id) {
+            return new Cursor(null, id);
+        }
+
+        public String encode() {
+            String raw = (at == null ? "-" : at.toString()) + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * @return null pour la première page
+         * @throws IllegalArgumentException si le curseur est invalide
+         */
+        public static Cursor decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) {
+                return null;
+            }
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = raw.indexOf('|');
+                String at = raw.substring(0, sep);
+                return new Cursor(at.equals("-") ? null : LocalDateTime.parse(at),
+                        Long.parseLong(raw.substring(sep + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Curseur de pagination invalide");
+            }
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.ieolympicstickets.backend.util;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Cache borné à éviction W-TinyLFU, avec TTL par entrée.
+ * <p>
+ * Une petite fenêtre LRU (1 %) accueille les nouvelles entrées ; en sortant de la fenêtre,
+ * une entrée n'entre dans la zone principale (SLRU probation/protected) que si elle a été
+ * demandée plus souvent que la victime, d'après un count-min sketch à compteurs de 4 bits
+ * divisés par deux périodiquement. Un balayage ponctuel de clés ne chasse donc pas les entrées populaires.
+ * <p>
+ * Lectures sans verrou (ConcurrentHashMap) ; la mise à jour de la politique après une lecture
+ * est abandonnée si le verrou est pris, ce qui ne fausse que légèrement les fréquences.
+ * <p>
+ * Une valeur chargée par {@link #get} n'est pas mise en cache si une invalidation (de n'importe
+ * quelle clé) a eu lieu pendant le chargement : elle peut dater d'avant l'écriture invalidée.
+ */
+public class TinyLfuCache<K, V> {
+
+    private final int maximumSize;
+    private final int windowMax;
+    private final int protectedMax;
+    private final long ttlNanos;
+    private final Map<K, Node<V>> data = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    //iteration order = LRU order (oldest first); guarded by lock
+    private final LinkedHashSet<K> window = new LinkedHashSet<>();
+    private final LinkedHashSet<K> probation = new LinkedHashSet<>();
+    private final LinkedHashSet<K> protectedSegment = new LinkedHashSet<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    //advances on every invalidation, under lock
+    private final AtomicLong generation = new AtomicLong();
+
+    public TinyLfuCache(int maximumSize, Duration ttl) {
+        this.maximumSize = Math.max(2, maximumSize);
+        this.windowMax = Math.max(1, this.maximumSize / 100);
+        this.protectedMax = (int) ((this.maximumSize - windowMax) * 0.8);
+        this.ttlNanos = ttl.toNanos();
+        this.sketch = new FrequencySketch(this.maximumSize);
+    }
+
+    /** Valeur en cache, ou calculée par loader (null n'est pas mis en cache) */
+    public V get(K key, Function<K, V> loader) {
+        Node<V> node = data.get(key);
+        long now = System.nanoTime();
+        if (node != null && node.expiresAt - now > 0) {
+            hits.incrementAndGet();
+            if (lock.tryLock()) {
+                try {
+                    onAccess(key);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return node.value;
+        }
+        misses.incrementAndGet();
+        long loadGeneration = generation.get();
+        V value = loader.apply(key);
+        if (value != null) {
+            put(key, value, loadGeneration);
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        lock.lock();
+        try {
+            insert(key, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            data.clear();
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    public long evictionCount() {
+        return evictions.get();
+    }
+
+    //skipped when invalidated since the load started: the value may predate the invalidated write
+    private void put(K key, V value, long loadGeneration) {
+        lock.lock();
+        try {
+            if (generation.get() == loadGeneration) {
+                insert(key, value);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //lock held
+    private void insert(K key, V value) {
+        sketch.increment(key);
+        Node<V> previous = data.put(key, new Node<>(value, System.nanoTime() + ttlNanos));
+        if (previous != null) {
+            onAccess(key);
+            return;
+        }
+        window.add(key);
+        evict();
+    }
+
+    //lock held
+    private void onAccess(K key) {
+        sketch.increment(key);
+        if (window.remove(key)) {
+            window.add(key);
+        } else if (probation.remove(key)) {
+            protectedSegment.add(key);
+            if (protectedSegment.size() > protectedMax) {
+                //demote the least recently used protected entry
+                K demoted = first(protectedSegment);
+                protectedSegment.remove(demoted);
+                probation.add(demoted);
+            }
+        } else if (protectedSegment.remove(key)) {
+            protectedSegment.add(key);
+        }
+    }
+
+    //lock held
+    private void evict() {
+        while (window.size() > windowMax) {
+            K candidate = first(window);
+            window.remove(candidate);
+            if (data.size() <= maximumSize) {
+                probation.add(candidate);
+                continue;
+            }
+            K victim = !probation.isEmpty() ? first(probation) : first(protectedSegment);
+            //admission: the newcomer from the window replaces the victim only if it is used more
+            if (victim != null && sketch.frequency(candidate) > sketch.frequency(victim)) {
+                remove(victim);
+                probation.add(candidate);
+            } else if (victim == null) {
+                probation.add(candidate);
+                continue;
+            } else {
+                data.remove(candidate);
+            }
+            evictions.incrementAndGet();
+        }
+        //safety net, e.g. maximumSize reached with a small window after invalidations
+        while (data.size() > maximumSize) {
+            K victim = !probation.isEmpty() ? first(probation)
+                    : !protectedSegment.isEmpty() ? first(protectedSegment) : first(window);
+            remove(victim);
+            evictions.incrementAndGet();
+        }
+    }
+
+    //lock held
+    private void remove(K key) {
+        data.remove(key);
+        window.remove(key);
+        probation.remove(key);
+        protectedSegment.remove(key);
+    }
+
+    private static <K> K first(LinkedHashSet<K> set) {
+        Iterator<K> it = set.iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    private record Node<V>(V value, long expiresAt) {}
+
+    /** Count-min sketch, 4 compteurs de 4 bits par clé, remis à moitié tous les 10 x taille accès */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+                0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maximumSize) {
+            int length = Integer.highestOneBit(Math.max(1, maximumSize - 1)) << 1;
+            this.table = new long[length];
+            this.mask = length - 1;
+            this.sampleSize = 10 * maximumSize;
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int min = 15;
+            for (int i = 0; i < 4; i++) {
+                min = Math.min(min, counter(hash, i));
+            }
+            return min;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = index(hash, i);
+                int offset = offset(hash, i);
+                if (((table[index] >>> offset) & 0xfL) != 0xfL) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                reset();
+            }
+        }
+
+        private int counter(int hash, int i) {
+            return (int) ((table[index(hash, i)] >>> offset(hash, i)) & 0xfL);
+        }
+
+        private int index(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            return (int) ((h ^ (h >>> 32)) & mask);
+        }
+
+        //16 counters of 4 bits per long
+        private int offset(int hash, int i) {
+            return (((hash >>> (i * 8)) & 3) * 4 + i) << 2;
+        }
+
+        //aging: halve every counter
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            }
+            additions /= 2;
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.ieolympicstickets.backend.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket par clé, sans verrou (algorithme GCRA).
+ * <p>
+ * Chaque seau n'est qu'un AtomicLong : l'instant théorique où il sera de nouveau plein.
+ * Une requête avance cet instant d'un intervalle (1/rate) par CAS, refusée s'il dépasse
+ * maintenant + burst intervalles. Un seau plein équivaut à un seau absent : {@link #evictIdle}
+ * (à appeler périodiquement) le supprime sans rien perdre : la mémoire est bornée aux clients actifs.
+ * Au-delà de maxKeys clients actifs, les nouveaux partagent un seau de débordement par politique.
+ * Les clés ont la forme "politique:client".
+ */
+public class TokenBucketRateLimiter {
+
+    private static final String OVERFLOW = "\u0000overflow";
+
+    private final int maxKeys;
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    public TokenBucketRateLimiter(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * @param ratePerSecond jetons rendus par seconde
+     * @param burst         taille du seau (requêtes acceptées d'affilée)
+     * @return 0 si la requête passe, sinon le délai en nanosecondes avant de réessayer
+     */
+    public long tryAcquire(String key, double ratePerSecond, int burst) {
+        long interval = (long) (1_000_000_000L / ratePerSecond);
+        long tolerance = interval * Math.max(0, burst - 1);
+        AtomicLong bucket = bucket(key);
+        while (true) {
+            long now = System.nanoTime();
+            long tat = bucket.get();
+            long start = tat - now > 0 ? tat : now;
+            if (start - now > tolerance) {
+                return start - now - tolerance;
+            }
+            if (bucket.compareAndSet(tat, start + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    /** Supprime les seaux pleins (clients inactifs) */
+    public void evictIdle() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(tat -> tat.get() - now <= 0);
+    }
+
+    /** true si la clé a un seau en cours (client actif) */
+    public boolean contains(String key) {
+        return buckets.containsKey(key);
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    private AtomicLong bucket(String key) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= maxKeys) {
+            return buckets.computeIfAbsent(OVERFLOW + key.substring(0, key.indexOf(':') + 1),
+                    k -> new AtomicLong(System.nanoTime()));
+        }
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(System.nanoTime()));
+    }
+}
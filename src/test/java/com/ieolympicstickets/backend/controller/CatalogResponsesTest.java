@@ -0,0 +1,119 @@
+package com.ieolympicstickets.backend.controller;
+
+import com.ieolympicstickets.backend.service.CatalogCache;
+import com.ieolympicstickets.backend.service.CatalogSnapshotService;
+import com.ieolympicstickets.backend.util.KeysetPage;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * ETag et Cache-Control ajoutés sans perdre les en-têtes posés par le contrôleur ;
+ * une variante (JSON ou gzip) et un ETag par Accept-Encoding.
+ */
+class CatalogResponsesTest {
+
+    private final CatalogCache catalogCache = mock(CatalogCache.class);
+    private final CatalogResponses catalogResponses = new CatalogResponses(catalogCache, 60, 5);
+
+    private static final CatalogSnapshotService.Snapshot SNAPSHOT = new CatalogSnapshotService.Snapshot(
+            "\"c1\"", "\"c1-gzip\"", "{}".getBytes(StandardCharsets.UTF_8), new byte[]{31, -117});
+
+    @Test
+    void keepsNextCursorOfPaginatedList() {
+        when(catalogCache.eventsVersion()).thenReturn("7");
+        ServletWebRequest request = new ServletWebRequest(new MockHttpServletRequest("GET", "/api/events"),
+                new MockHttpServletResponse());
+
+        ResponseEntity<List<String>> response = catalogResponses.events(request,
+                () -> Pagination.ok(new KeysetPage<>(List.of("a", "b"), "next")));
+
+        assertEquals("next", response.getHeaders().getFirst(Pagination.NEXT_CURSOR_HEADER));
+        assertEquals("\"e7\"", response.getHeaders().getETag());
+        assertEquals("max-age=60, public, stale-while-revalidate=60",
+                response.getHeaders().getFirst(HttpHeaders.CACHE_CONTROL));
+        assertEquals(List.of("a", "b"), response.getBody());
+    }
+
+    @Test
+    void answersNotModifiedWithoutBuildingTheBody() {
+        when(catalogCache.eventsVersion()).thenReturn("7");
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/api/events");
+        servletRequest.addHeader(HttpHeaders.IF_NONE_MATCH, "\"e7\"");
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        ResponseEntity<List<String>> response = catalogResponses.events(
+                new ServletWebRequest(servletRequest, servletResponse),
+                () -> {
+                    throw new AssertionError("body built for a 304");
+                });
+
+        assertNull(response);
+        assertEquals(304, servletResponse.getStatus());
+    }
+
+    @Test
+    void gzipVariantHasItsOwnETag() {
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/api/catalog");
+        servletRequest.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br");
+
+        ResponseEntity<byte[]> response = catalogResponses.snapshot(
+                new ServletWebRequest(servletRequest, new MockHttpServletResponse()), SNAPSHOT);
+
+        assertEquals("\"c1-gzip\"", response.getHeaders().getETag());
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(SNAPSHOT.gzip(), response.getBody());
+    }
+
+    @Test
+    void identityETagDoesNotValidateTheGzipVariant() {
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/api/catalog");
+        servletRequest.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        servletRequest.addHeader(HttpHeaders.IF_NONE_MATCH, "\"c1\"");
+
+        ResponseEntity<byte[]> response = catalogResponses.snapshot(
+                new ServletWebRequest(servletRequest, new MockHttpServletResponse()), SNAPSHOT);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertArrayEquals(SNAPSHOT.gzip(), response.getBody());
+    }
+
+    @Test
+    void gzipWithZeroWeightGetsTheJson() {
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/api/catalog");
+        servletRequest.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, identity");
+
+        ResponseEntity<byte[]> response = catalogResponses.snapshot(
+                new ServletWebRequest(servletRequest, new MockHttpServletResponse()), SNAPSHOT);
+
+        assertEquals("\"c1\"", response.getHeaders().getETag());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(SNAPSHOT.json(), response.getBody());
+    }
+
+    @Test
+    void parsesAcceptEncodingWeights() {
+        assertTrue(CatalogResponses.acceptsGzip("gzip"));
+        assertTrue(CatalogResponses.acceptsGzip("br;q=1.0, GZIP;q=0.5"));
+        assertTrue(CatalogResponses.acceptsGzip("*"));
+        assertFalse(CatalogResponses.acceptsGzip(null));
+        assertFalse(CatalogResponses.acceptsGzip("gzip;q=0"));
+        assertFalse(CatalogResponses.acceptsGzip("gzip; q=0.000, *"));
+        assertFalse(CatalogResponses.acceptsGzip("*;q=0"));
+        assertFalse(CatalogResponses.acceptsGzip("deflate, br"));
+    }
+}
@@ -0,0 +1,145 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.controller.CartController.ValidateCartResponse;
+import com.ieolympicstickets.backend.model.Cart;
+import com.ieolympicstickets.backend.model.CartItem;
+import com.ieolympicstickets.backend.model.Event;
+import com.ieolympicstickets.backend.model.Offer;
+import com.ieolympicstickets.backend.model.User;
+import jakarta.persistence.EntityManager;
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.Session;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Allers-retours JDBC d'un checkout de 8 billets ({@link CartService#validateCart}), mesurés sur la session Hibernate :
+ * toutes les requêtes, de la lecture du panier au vidage du panier, pas seulement les insertions.
+ * Mesuré sur MariaDB 11.4.5 : 17 allers-retours (5 batchs, 12 requêtes) ; avec des ids IDENTITY et un save
+ * par billet, 24 (chaque billet était un INSERT immédiat).
+ * Nécessite une base MySQL (DATABASE_URL), comme le test de chargement du contexte ; tout est annulé en fin de test.
+ */
+@SpringBootTest
+@Transactional
+@EnabledIfEnvironmentVariable(named = "DATABASE_URL", matches = ".+")
+class CheckoutBatchInsertTest {
+
+    private static final int TICKETS = 8;
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private CartService cartService;
+
+    @Test
+    void eightTicketCheckoutRoundTrips() {
+        User user = user();
+        Offer offer = offer();
+        //first checkout fetches the id blocks (order, order_line, ticket) so the measured one does not
+        checkout(user, offer, 1);
+
+        Cart cart = cart(user, offer, TICKETS);
+        entityManager.flush();
+        //the checkout loads cart, offer and order itself, as in a request
+        entityManager.clear();
+
+        RoundTrips roundTrips = new RoundTrips();
+        entityManager.unwrap(Session.class).addEventListeners(roundTrips);
+        ValidateCartResponse response = cartService.validateCart(cart.getId(), user, "tok_batch", null);
+        entityManager.flush();
+        roundTrips.stop();
+
+        assertTrue(response.ok(), String.valueOf(response.errors()));
+        assertEquals(TICKETS, response.qrHashes().size());
+        //order, order_line, tickets (8 rows in one batch), order status update, cart items removal
+        assertEquals(5, roundTrips.batches);
+        //phase 1: cart, items, offer, stock reservation; PAID transition;
+        //phase 3: order lock, cart, lines, event, buyer, cart items lock, cart items
+        assertEquals(12, roundTrips.statements);
+    }
+
+    private void checkout(User user, Offer offer, int quantity) {
+        Cart cart = cart(user, offer, quantity);
+        entityManager.flush();
+        ValidateCartResponse response = cartService.validateCart(cart.getId(), user, "tok_warmup", null);
+        assertTrue(response.ok(), String.valueOf(response.errors()));
+        entityManager.flush();
+    }
+
+    private Cart cart(User user, Offer offer, int quantity) {
+        Cart cart = entityManager.createQuery("select c from Cart c where c.user = :user", Cart.class)
+                .setParameter("user", user)
+                .getResultStream()
+                .findFirst()
+                .orElseGet(() -> {
+                    Cart created = new Cart(null, user);
+                    entityManager.persist(created);
+                    return created;
+                });
+        cart.addItem(new CartItem(cart, offer, quantity));
+        return cart;
+    }
+
+    private User user() {
+        User user = new User();
+        user.setEmail(UUID.randomUUID() + "@batch.test");
+        user.setPasswordHash("x".repeat(60));
+        user.setFirstName("Batch");
+        user.setLastName("Test");
+        user.setDateOfBirth(LocalDate.of(1990, 1, 1));
+        entityManager.persist(user);
+        return user;
+    }
+
+    private Offer offer() {
+        Event event = new Event();
+        event.setTitle("Batch test");
+        event.setEventDateTime(LocalDateTime.now().plusDays(30));
+        event.setLocation("Paris");
+        entityManager.persist(event);
+        Offer offer = new Offer();
+        offer.setEvent(event);
+        offer.setName("Solo");
+        offer.setPrice(new BigDecimal("50.00"));
+        offer.setStock(100);
+        entityManager.persist(offer);
+        return offer;
+    }
+
+    /** Compte les exécutions JDBC de la session : batchs et requêtes hors batch */
+    private static class RoundTrips extends BaseSessionEventListener {
+        private boolean active = true;
+        private int batches;
+        private int statements;
+
+        @Override
+        public void jdbcExecuteBatchStart() {
+            if (active) {
+                batches++;
+            }
+        }
+
+        @Override
+        public void jdbcExecuteStatementStart() {
+            if (active) {
+                statements++;
+            }
+        }
+
+        //listeners cannot be removed from a session
+        void stop() {
+            active = false;
+        }
+    }
+}
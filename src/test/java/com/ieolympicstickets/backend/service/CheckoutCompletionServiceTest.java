@@ -0,0 +1,68 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.model.Cart;
+import com.ieolympicstickets.backend.model.CartItem;
+import com.ieolympicstickets.backend.model.Order;
+import com.ieolympicstickets.backend.model.OrderStatus;
+import com.ieolympicstickets.backend.model.User;
+import com.ieolympicstickets.backend.repository.CartItemRepository;
+import com.ieolympicstickets.backend.repository.CartRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Reprise d'une commande PAID : mêmes effets que la fin du checkout.
+ */
+class CheckoutCompletionServiceTest {
+
+    private static final Long ORDER_ID = 5L;
+
+    private final OrderService orderService = mock(OrderService.class);
+    private final TicketIssuanceService ticketIssuanceService = mock(TicketIssuanceService.class);
+    private final CartRepository cartRepository = mock(CartRepository.class);
+    private final CartItemRepository cartItemRepository = mock(CartItemRepository.class);
+    private final StockHoldService stockHoldService = mock(StockHoldService.class);
+    private final CheckoutCompletionService service = new CheckoutCompletionService(orderService,
+            ticketIssuanceService, cartRepository, cartItemRepository, stockHoldService);
+
+    @Test
+    void recoveredPaidOrderEmptiesTheBuyersCartAndReleasesHolds() {
+        User user = new User();
+        Order order = Order.builder().id(ORDER_ID).user(user).status(OrderStatus.PAID).build();
+        CartItem addedDuringPayment = new CartItem();
+        Cart cart = new Cart();
+        cart.setItems(new ArrayList<>(List.of(addedDuringPayment)));
+        when(orderService.lockOrder(ORDER_ID)).thenReturn(order);
+        when(ticketIssuanceService.issuePaid(order)).thenReturn(List.of("qr"));
+        when(cartRepository.findByUser(user)).thenReturn(Optional.of(cart));
+        when(cartItemRepository.findByCartForUpdate(cart)).thenReturn(List.of(addedDuringPayment));
+
+        Optional<CheckoutCompletionService.Completion> done = service.completePaid(ORDER_ID);
+
+        assertEquals(List.of("qr"), done.orElseThrow().qrHashes());
+        verify(stockHoldService).releaseHold(addedDuringPayment);
+        assertTrue(cart.getItems().isEmpty());
+        verify(cartRepository).save(cart);
+    }
+
+    @Test
+    void recoveryLeavesOrdersCompletedMeanwhile() {
+        Order order = Order.builder().id(ORDER_ID).user(new User()).status(OrderStatus.ISSUED).build();
+        when(orderService.lockOrder(ORDER_ID)).thenReturn(order);
+
+        assertTrue(service.completePaid(ORDER_ID).isEmpty());
+        verify(ticketIssuanceService, never()).issuePaid(any());
+        verify(cartRepository, never()).findByUser(any());
+    }
+}
@@ -0,0 +1,67 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.controller.CartController.ValidateCartResponse;
+import com.ieolympicstickets.backend.model.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Rejeu d'une même requête, refus d'une clé réutilisée avec un autre moyen de paiement.
+ */
+class CheckoutIdempotencyServiceTest {
+
+    private final CheckoutIdempotencyService service = new CheckoutIdempotencyService(60, 100, 1);
+
+    @Test
+    void replaysTheFirstResponse() {
+        User user = user();
+        AtomicInteger runs = new AtomicInteger();
+        ValidateCartResponse first = service.validateOnce("k", user, 3L, "tok", () -> response(runs));
+
+        assertSame(first, service.validateOnce("k", user, 3L, "tok", () -> response(runs)));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void rejectsTheKeyWithACollidingTokenHash() {
+        //same String.hashCode, different cards
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        User user = user();
+        AtomicInteger runs = new AtomicInteger();
+        service.validateOnce("k", user, 3L, "Aa", () -> response(runs));
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> service.validateOnce("k", user, 3L, "BB", () -> response(runs)));
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, ex.getStatusCode());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void digestsTheWholeToken() {
+        assertEquals(64, CheckoutIdempotencyService.tokenDigest("tok").length());
+        assertNotEquals(CheckoutIdempotencyService.tokenDigest("Aa"), CheckoutIdempotencyService.tokenDigest("BB"));
+        assertNotEquals(CheckoutIdempotencyService.tokenDigest(null), CheckoutIdempotencyService.tokenDigest(""));
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setId(1L);
+        return user;
+    }
+
+    private static ValidateCartResponse response(AtomicInteger runs) {
+        runs.incrementAndGet();
+        return new ValidateCartResponse(true, BigDecimal.TEN, List.of(), List.of(), 1L, "ISSUED");
+    }
+}
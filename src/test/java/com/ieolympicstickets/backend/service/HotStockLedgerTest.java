@@ -0,0 +1,114 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.model.Offer;
+import com.ieolympicstickets.backend.repository.CartItemRepository;
+import com.ieolympicstickets.backend.repository.OfferRepository;
+import com.ieolympicstickets.backend.repository.OrderLineRepository;
+import com.ieolympicstickets.backend.repository.TicketRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Reconstruction du ledger au redémarrage : les unités vendues mais pas encore émises en billets
+ * doivent être comptées, sinon l'offre est survendue.
+ */
+class HotStockLedgerTest {
+
+    private static final Long OFFER_ID = 1L;
+
+    private final OfferRepository offerRepository = mock(OfferRepository.class);
+    private final TicketRepository ticketRepository = mock(TicketRepository.class);
+    private final CartItemRepository cartItemRepository = mock(CartItemRepository.class);
+    private final OrderLineRepository orderLineRepository = mock(OrderLineRepository.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private HotStockLedger ledger;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        doAnswer(inv -> {
+            ((Consumer<TransactionStatus>) inv.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        Offer offer = new Offer();
+        offer.setOfferId(OFFER_ID);
+        offer.setHot(true);
+        when(offerRepository.findByHotTrue()).thenReturn(List.of(offer));
+        ledger = new HotStockLedger(offerRepository, ticketRepository, cartItemRepository, orderLineRepository,
+                mock(JdbcTemplate.class), transactionTemplate, 4, true);
+    }
+
+    @Test
+    void restartWithUnflushedPendingIssuanceOrder() {
+        //8 units sold (order PENDING_ISSUANCE, no ticket yet), crash before the flush
+        when(offerRepository.findStockByOfferId(OFFER_ID)).thenReturn(100);
+        when(offerRepository.findLedgerConsumedByOfferId(OFFER_ID)).thenReturn(0);
+        when(orderLineRepository.sumQuantityByOfferIdAndOrderStatusIn(eq(OFFER_ID), anyCollection())).thenReturn(8L);
+
+        ledger.rebuild();
+
+        assertEquals(92, ledger.available(OFFER_ID));
+        verify(offerRepository).resetLedger(OFFER_ID, 92, 8L);
+    }
+
+    @Test
+    void restartWithFlushedPendingIssuanceOrder() {
+        when(offerRepository.findStockByOfferId(OFFER_ID)).thenReturn(92);
+        when(offerRepository.findLedgerConsumedByOfferId(OFFER_ID)).thenReturn(8);
+        when(orderLineRepository.sumQuantityByOfferIdAndOrderStatusIn(eq(OFFER_ID), anyCollection())).thenReturn(8L);
+
+        ledger.rebuild();
+
+        assertEquals(92, ledger.available(OFFER_ID));
+    }
+
+    @Test
+    void restartCountsTicketsPendingOrdersAndHolds() {
+        when(offerRepository.findStockByOfferId(OFFER_ID)).thenReturn(80);
+        when(offerRepository.findLedgerConsumedByOfferId(OFFER_ID)).thenReturn(20);
+        when(ticketRepository.countByOfferOfferId(OFFER_ID)).thenReturn(10L);
+        when(orderLineRepository.sumQuantityByOfferIdAndOrderStatusIn(eq(OFFER_ID), anyCollection())).thenReturn(12L);
+        when(cartItemRepository.sumHeldQuantityByOfferId(OFFER_ID)).thenReturn(3L);
+
+        ledger.rebuild();
+
+        //25 consumed, 20 already in the offer row: 5 recovered
+        assertEquals(75, ledger.available(OFFER_ID));
+        verify(offerRepository).resetLedger(OFFER_ID, 75, 25L);
+    }
+
+    @Test
+    void multiNodeLeavesHotOffersToTheDatabase() {
+        HotStockLedger shared = new HotStockLedger(offerRepository, ticketRepository, cartItemRepository,
+                orderLineRepository, mock(JdbcTemplate.class), transactionTemplate, 4, false);
+        Offer offer = new Offer();
+        offer.setOfferId(OFFER_ID);
+        offer.setHot(true);
+
+        shared.rebuild();
+        shared.onOfferSaved(offer);
+
+        assertFalse(shared.isTracked(OFFER_ID));
+        assertFalse(shared.tryReserve(OFFER_ID, 1));
+        verify(offerRepository, never()).resetLedger(anyLong(), anyInt(), anyLong());
+    }
+}
@@ -0,0 +1,128 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.exceptions.PaymentException;
+import com.ieolympicstickets.backend.model.PaymentRefund;
+import com.ieolympicstickets.backend.repository.PaymentRefundRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Un remboursement en échec est enregistré, retenté, et jamais lancé deux fois en parallèle.
+ */
+class RefundServiceTest {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("120.00");
+
+    private final PaymentRefundRepository repository = mock(PaymentRefundRepository.class);
+    private final PaymentService paymentService = mock(PaymentService.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final RefundService refundService = new RefundService(repository, paymentService, transactionTemplate, 3);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(transactionTemplate.execute(any())).thenAnswer(inv ->
+                ((TransactionCallback<Object>) inv.getArgument(0)).doInTransaction(null));
+        doAnswer(inv -> {
+            ((Consumer<TransactionStatus>) inv.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    void failedRefundIsRecorded() throws PaymentException {
+        doThrow(new PaymentException("Service de paiement momentanément indisponible"))
+                .when(paymentService).refund(AMOUNT, "tok");
+
+        refundService.refund(7L, AMOUNT, "tok");
+
+        ArgumentCaptor<PaymentRefund> saved = ArgumentCaptor.forClass(PaymentRefund.class);
+        verify(repository).save(saved.capture());
+        assertEquals(7L, saved.getValue().getOrderId());
+        assertEquals("tok", saved.getValue().getPaymentToken());
+        assertEquals(1, saved.getValue().getAttempts());
+        assertNull(saved.getValue().getRefundedAt());
+    }
+
+    @Test
+    void successfulRefundRecordsNothing() throws PaymentException {
+        refundService.refund(7L, AMOUNT, "tok");
+
+        verify(paymentService).refund(AMOUNT, "tok");
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    void retryMarksRefundedAndForgetsTheToken() throws PaymentException {
+        PaymentRefund pending = pending();
+        when(repository.findRetryableIds(3)).thenReturn(List.of(1L));
+        when(repository.findById(1L)).thenReturn(Optional.of(pending));
+        when(repository.claimAttempt(1L, 1)).thenReturn(1);
+
+        refundService.retryPending();
+
+        verify(paymentService).refund(AMOUNT, "tok");
+        assertNotNull(pending.getRefundedAt());
+        assertNull(pending.getPaymentToken());
+    }
+
+    @Test
+    void retryKeepsTheErrorWhenItFailsAgain() throws PaymentException {
+        PaymentRefund pending = pending();
+        when(repository.findRetryableIds(3)).thenReturn(List.of(1L));
+        when(repository.findById(1L)).thenReturn(Optional.of(pending));
+        when(repository.claimAttempt(1L, 1)).thenReturn(1);
+        doThrow(new PaymentException("refusé")).when(paymentService).refund(AMOUNT, "tok");
+
+        refundService.retryPending();
+
+        assertNull(pending.getRefundedAt());
+        assertEquals("tok", pending.getPaymentToken());
+        assertEquals("refusé", pending.getLastError());
+    }
+
+    @Test
+    void attemptClaimedElsewhereIsSkipped() throws PaymentException {
+        when(repository.findRetryableIds(3)).thenReturn(List.of(1L));
+        when(repository.findById(1L)).thenReturn(Optional.of(pending()));
+        when(repository.claimAttempt(1L, 1)).thenReturn(0);
+
+        refundService.retryPending();
+
+        verify(paymentService, never()).refund(any(), any());
+        verify(repository, times(1)).findById(1L);
+    }
+
+    private static PaymentRefund pending() {
+        return PaymentRefund.builder()
+                .id(1L)
+                .orderId(7L)
+                .amount(AMOUNT)
+                .paymentToken("tok")
+                .attempts(1)
+                .createdAt(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,99 @@
+package com.ieolympicstickets.backend.service;
+
+import com.ieolympicstickets.backend.exceptions.TicketNotFoundException;
+import com.ieolympicstickets.backend.model.Ticket;
+import com.ieolympicstickets.backend.repository.TicketRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Scan : l'index mémoire ne tranche que les billets déjà utilisés, le reste va en base.
+ */
+class TicketServiceTest {
+
+    private final TicketRepository ticketRepository = mock(TicketRepository.class);
+    private final SignedTicketService signedTicketService = mock(SignedTicketService.class);
+    private final TicketScanIndex ticketScanIndex = mock(TicketScanIndex.class);
+    private final TicketService ticketService = new TicketService(ticketRepository, signedTicketService, ticketScanIndex);
+
+    private static final String SIGNED_QR = SignedTicketService.PREFIX + "SIGNED";
+
+    @Test
+    void ticketMissingFromTheIndexIsCheckedInTheDatabase() {
+        //issued on another instance since the last refresh
+        when(ticketScanIndex.lookup("fresh")).thenReturn(TicketScanIndex.Lookup.ABSENT);
+        when(ticketRepository.markUsed(eq("fresh"), any())).thenReturn(1);
+
+        assertTrue(ticketService.scanByHash("fresh"));
+        verify(ticketScanIndex).markUsedAfterCommit(List.of("fresh"));
+    }
+
+    @Test
+    void unknownQrIsStillRejected() {
+        when(ticketScanIndex.lookup("forged")).thenReturn(TicketScanIndex.Lookup.ABSENT);
+
+        assertThrows(TicketNotFoundException.class, () -> ticketService.scanByHash("forged"));
+    }
+
+    @Test
+    void usedTicketIsAnsweredFromMemory() {
+        when(ticketScanIndex.lookup("used")).thenReturn(TicketScanIndex.Lookup.USED);
+
+        assertFalse(ticketService.scanByHash("used"));
+        verify(ticketRepository, never()).markUsed(anyString(), any());
+    }
+
+    @Test
+    void batchLooksUpAbsentHashesAndSkipsUsedOnes() {
+        when(ticketScanIndex.lookup("fresh")).thenReturn(TicketScanIndex.Lookup.ABSENT);
+        when(ticketScanIndex.lookup("used")).thenReturn(TicketScanIndex.Lookup.USED);
+        Ticket fresh = Ticket.builder().id(1L).qrHash("fresh").used(false).build();
+        when(ticketRepository.findByQrHashInForUpdate(Set.of("fresh"))).thenReturn(List.of(fresh));
+
+        List<TicketService.ScanResult> results = ticketService.scanBatch(List.of("fresh", "used"));
+
+        assertEquals(List.of(new TicketService.ScanResult("fresh", TicketService.ScanResult.SCANNED),
+                new TicketService.ScanResult("used", TicketService.ScanResult.ALREADY_USED)), results);
+        verify(ticketRepository).markUsedByIdIn(eq(Set.of(1L)), any());
+        verify(ticketScanIndex).markUsedAfterCommit(List.of("fresh"));
+        verify(ticketRepository, never()).findByIdInForUpdate(anyCollection());
+    }
+
+    @Test
+    void signedScanRecordsTheQrHashInTheIndex() {
+        when(signedTicketService.verify(SIGNED_QR)).thenReturn(new SignedTicketService.SignedTicket(7L, 1L, 2L));
+        when(ticketRepository.markUsedById(eq(7L), any())).thenReturn(1);
+        when(ticketRepository.findQrHashById(7L)).thenReturn(Optional.of("hash-7"));
+
+        assertTrue(ticketService.scanByHash(SIGNED_QR));
+        verify(ticketScanIndex).markUsedAfterCommit(List.of("hash-7"));
+    }
+
+    @Test
+    void signedBatchScanRecordsTheQrHashInTheIndex() {
+        when(signedTicketService.verify(SIGNED_QR)).thenReturn(new SignedTicketService.SignedTicket(7L, 1L, 2L));
+        Ticket ticket = Ticket.builder().id(7L).qrHash("hash-7").used(false).build();
+        when(ticketRepository.findByIdInForUpdate(Set.of(7L))).thenReturn(List.of(ticket));
+
+        List<TicketService.ScanResult> results = ticketService.scanBatch(List.of(SIGNED_QR));
+
+        assertEquals(List.of(new TicketService.ScanResult(SIGNED_QR, TicketService.ScanResult.SCANNED)), results);
+        verify(ticketScanIndex).markUsedAfterCommit(List.of("hash-7"));
+    }
+}
@@ -0,0 +1,56 @@
+package com.ieolympicstickets.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Vecteurs de la RFC 9285 et aller-retour sur des charges arbitraires.
+ */
+class Base45Test {
+
+    @Test
+    void encodesRfcVectors() {
+        assertEquals("BB8", Base45.encode(ascii("AB")));
+        assertEquals("%69 VD92EX0", Base45.encode(ascii("Hello!!")));
+        assertEquals("UJCLQE7W581", Base45.encode(ascii("base-45")));
+        assertEquals("", Base45.encode(new byte[0]));
+    }
+
+    @Test
+    void decodesRfcVectors() {
+        assertArrayEquals(ascii("ietf!"), Base45.decode("QED8WEX0"));
+        assertArrayEquals(ascii("Hello!!"), Base45.decode("%69 VD92EX0"));
+    }
+
+    @Test
+    void roundTripsEveryLength() {
+        Random random = new Random(42);
+        for (int length = 0; length < 64; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            assertArrayEquals(bytes, Base45.decode(Base45.encode(bytes)), "longueur " + length);
+        }
+        byte[] extremes = {0, 0, (byte) 0xff, (byte) 0xff, (byte) 0xff};
+        assertArrayEquals(extremes, Base45.decode(Base45.encode(extremes)));
+    }
+
+    @Test
+    void rejectsInvalidInput() {
+        //length 1 mod 3, lowercase letter, and blocks above 0xffff / 0xff
+        assertThrows(IllegalArgumentException.class, () -> Base45.decode("BB8B"));
+        assertThrows(IllegalArgumentException.class, () -> Base45.decode("bb8"));
+        assertThrows(IllegalArgumentException.class, () -> Base45.decode("GGW"));
+        assertThrows(IllegalArgumentException.class, () -> Base45.decode("::"));
+        assertThrows(IllegalArgumentException.class, () -> Base45.decode("é00"));
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
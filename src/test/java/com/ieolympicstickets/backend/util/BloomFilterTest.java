@@ -0,0 +1,54 @@
+package com.ieolympicstickets.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Aucun faux négatif ; taux de faux positifs proche de la cible.
+ */
+class BloomFilterTest {
+
+    private static final int ENTRIES = 100_000;
+
+    @Test
+    void hasNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(ENTRIES, 0.01);
+        SplittableRandom random = new SplittableRandom(11);
+        long[] added = new long[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            added[i] = random.nextLong();
+            filter.add(added[i]);
+        }
+        for (long fingerprint : added) {
+            assertTrue(filter.mightContain(fingerprint));
+        }
+    }
+
+    @Test
+    void keepsFalsePositiveRateNearTarget() {
+        BloomFilter filter = new BloomFilter(ENTRIES, 0.01);
+        SplittableRandom random = new SplittableRandom(13);
+        for (int i = 0; i < ENTRIES; i++) {
+            filter.add(random.nextLong());
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < ENTRIES; i++) {
+            if (filter.mightContain(random.nextLong())) {
+                falsePositives++;
+            }
+        }
+        //twice the target leaves room for the rounding of m and k
+        assertTrue(falsePositives < ENTRIES * 0.02, "faux positifs : " + falsePositives);
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        BloomFilter filter = new BloomFilter(1_000, 0.01);
+        assertFalse(filter.mightContain(0L));
+        assertFalse(filter.mightContain(123_456_789L));
+    }
+}
@@ -0,0 +1,77 @@
+package com.ieolympicstickets.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.SplittableRandom;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ajout, drapeau et agrandissement de la table.
+ */
+class FingerprintSetTest {
+
+    @Test
+    void addsAndFlags() {
+        FingerprintSet set = new FingerprintSet(16);
+        set.add(42L, false);
+        set.add(84L, true);
+
+        assertEquals(0, set.get(42L));
+        assertEquals(1, set.get(84L));
+        assertEquals(FingerprintSet.ABSENT, set.get(126L));
+        assertEquals(2, set.size());
+
+        assertTrue(set.setFlag(42L));
+        assertEquals(1, set.get(42L));
+        assertFalse(set.setFlag(126L));
+        assertEquals(FingerprintSet.ABSENT, set.get(126L));
+    }
+
+    @Test
+    void keepsRaisedFlagOnReAdd() {
+        FingerprintSet set = new FingerprintSet(16);
+        set.add(42L, true);
+        set.add(42L, false);
+
+        assertEquals(1, set.get(42L));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    void acceptsZeroFingerprint() {
+        FingerprintSet set = new FingerprintSet(16);
+        set.add(0L, false);
+
+        assertEquals(0, set.get(0L));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    void growsPastExpectedEntriesWithoutLosingEntries() {
+        FingerprintSet set = new FingerprintSet(16);
+        long initialBytes = set.sizeInBytes();
+        SplittableRandom random = new SplittableRandom(7);
+        Set<Long> added = new HashSet<>();
+        while (added.size() < 10_000) {
+            long fingerprint = random.nextLong() & ~1L;
+            if (fingerprint != 0 && added.add(fingerprint)) {
+                set.add(fingerprint, (fingerprint & 2) != 0);
+            }
+        }
+
+        assertEquals(added.size(), set.size());
+        assertTrue(set.sizeInBytes() > initialBytes);
+        assertTrue(set.sizeInBytes() >= 10_000L * 4 / 3 * Long.BYTES);
+        for (long fingerprint : added) {
+            assertEquals((fingerprint & 2) != 0 ? 1 : 0, set.get(fingerprint));
+        }
+        Set<Long> visited = new HashSet<>();
+        set.forEach(visited::add);
+        assertEquals(added, visited);
+    }
+}
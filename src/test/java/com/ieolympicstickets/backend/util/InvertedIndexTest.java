@@ -0,0 +1,74 @@
+package com.ieolympicstickets.backend.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Recherche par préfixe, ET entre les mots, normalisation et réindexation.
+ */
+class InvertedIndexTest {
+
+    private InvertedIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new InvertedIndex();
+        index.put(1L, "Athlétisme - Finale 100m", "Stade de France");
+        index.put(2L, "Natation - Finale 4x100m", "Paris La Défense Arena");
+        index.put(3L, "Athlétisme - Qualifications", "Stade de France");
+    }
+
+    @Test
+    void matchesPrefixes() {
+        assertEquals(Set.of(1L, 3L), index.search("athl"));
+        assertEquals(Set.of(1L, 2L), index.search("fin"));
+        assertEquals(Set.of(2L), index.search("ar"));
+    }
+
+    @Test
+    void requiresEveryWord() {
+        assertEquals(Set.of(1L), index.search("athl fin"));
+        assertEquals(Set.of(3L), index.search("qualif stade"));
+        assertTrue(index.search("natation stade").isEmpty());
+    }
+
+    @Test
+    void ignoresAccentsCaseAndStopWords() {
+        assertEquals(Set.of(2L), index.search("DEFENSE"));
+        assertEquals(Set.of(1L, 3L), index.search("stade de france"));
+        assertEquals(List.of("l", "arena"), List.copyOf(InvertedIndex.tokenize("l'Aréna")));
+    }
+
+    @Test
+    void blankQueryMatchesNothing() {
+        assertTrue(index.search("").isEmpty());
+        assertTrue(index.search(" - ").isEmpty());
+    }
+
+    @Test
+    void reindexingReplacesPreviousTerms() {
+        index.put(3L, "Judo - Demi-finale", "Champ-de-Mars Arena");
+
+        assertEquals(Set.of(1L), index.search("athl"));
+        assertEquals(Set.of(1L, 2L, 3L), index.search("fin"));
+        assertEquals(Set.of(2L, 3L), index.search("arena"));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void removeAndClearDropDocuments() {
+        index.remove(1L);
+        assertEquals(Set.of(3L), index.search("athl"));
+        assertEquals(2, index.size());
+
+        index.clear();
+        assertTrue(index.search("fin").isEmpty());
+        assertEquals(0, index.size());
+    }
+}
@@ -0,0 +1,134 @@
+package com.ieolympicstickets.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Admission, éviction, TTL, et chargement concurrent d'une invalidation.
+ */
+class TinyLfuCacheTest {
+
+    private static final Duration LONG_TTL = Duration.ofMinutes(5);
+
+    @Test
+    void loadsOnceThenHits() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, LONG_TTL);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("v", cache.get("k", k -> value(loads)));
+        assertEquals("v", cache.get("k", k -> value(loads)));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    void doesNotCacheNull() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, LONG_TTL);
+
+        assertNull(cache.get("k", k -> null));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void staysWithinMaximumSize() {
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(100, LONG_TTL);
+        for (int i = 0; i < 1_000; i++) {
+            cache.put(i, i);
+        }
+
+        assertEquals(100, cache.size());
+        assertEquals(900, cache.evictionCount());
+    }
+
+    @Test
+    void scanDoesNotEvictPopularEntries() {
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(100, LONG_TTL);
+        for (int round = 0; round < 10; round++) {
+            for (int hot = 0; hot < 50; hot++) {
+                cache.get(hot, k -> k);
+            }
+        }
+        //one-off keys, each seen once (less than one aging period): refused by the admission filter
+        for (int cold = 1_000; cold < 1_500; cold++) {
+            cache.get(cold, k -> k);
+        }
+
+        int kept = 0;
+        for (int hot = 0; hot < 50; hot++) {
+            if (cache.get(hot, k -> null) != null) {
+                kept++;
+            }
+        }
+        assertEquals(50, kept);
+        assertTrue(cache.size() <= 100);
+    }
+
+    @Test
+    void expiresAfterTtl() throws InterruptedException {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, Duration.ofMillis(20));
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("k", k -> value(loads));
+
+        Thread.sleep(50);
+
+        cache.get("k", k -> value(loads));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidateDropsEntry() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, LONG_TTL);
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("a", k -> value(loads));
+        cache.get("b", k -> value(loads));
+
+        cache.invalidate("a");
+        cache.get("a", k -> value(loads));
+        cache.get("b", k -> value(loads));
+        cache.invalidateAll();
+
+        assertEquals(3, loads.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void loadRacingAnInvalidationIsNotCached() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(10, LONG_TTL);
+
+        //the admin write commits and invalidates while the old value is being read
+        String stale = cache.get("all", k -> {
+            cache.invalidateAll();
+            return "old";
+        });
+
+        assertEquals("old", stale);
+        assertEquals(0, cache.size());
+        assertEquals("new", cache.get("all", k -> "new"));
+        assertEquals("new", cache.get("all", k -> "unexpected load"));
+    }
+
+    @Test
+    void loadRacingAnotherKeyInvalidationIsNotCached() {
+        TinyLfuCache<Long, String> cache = new TinyLfuCache<>(10, LONG_TTL);
+
+        cache.get(1L, k -> {
+            cache.invalidate(2L);
+            return "old";
+        });
+
+        assertEquals(0, cache.size());
+    }
+
+    private static String value(AtomicInteger loads) {
+        loads.incrementAndGet();
+        return "v";
+    }
+}